@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** The commit that last changed each line of a file. The lines are
+ * traced back from a commit through its parents, first and second. A
+ * parent whose version of the file is the same takes every line still
+ * unaccounted for without any comparison; otherwise the two versions
+ * are diffed and the parent takes the lines they share. Lines no parent
+ * takes were changed by the commit itself. Commits are visited newest
+ * first, so the lines reaching a commit by several paths are dealt with
+ * together, and the walk ends as soon as no line is left.
+ * @author AMK Somani
+ */
+public class Blame {
+
+    /** Return the blame of the file FILENAME as the commit HEAD has it,
+     * which must track it. */
+    static Blame of(Commit head, String filename) {
+        Blame b = new Blame(filename, head.fileCode(filename));
+        b.run(head);
+        return b;
+    }
+
+    /** The blame of FILENAME, whose final version is the blob CODE. */
+    private Blame(String filename, String code) {
+        this.filename = filename;
+        this.lines = Lines.split(contents(code))[0];
+        this.commits = new String[lines.size()];
+    }
+
+    /** Trace every line back from HEAD. */
+    private void run(Commit head) {
+        Suspect first = suspect(head, head.fileCode(filename));
+        for (int i = 0; i < lines.size(); i += 1) {
+            first.lines.add(new int[] {i, i});
+        }
+        while (!queue.isEmpty()) {
+            Suspect s = queue.remove();
+            suspects.remove(s.commit.sha1());
+            pass(s);
+        }
+    }
+
+    /** Hand the lines of S on to the parents of its commit that have
+     * them, and blame the commit for the rest. */
+    private void pass(Suspect s) {
+        List<int[]> left = s.lines;
+        for (String id : s.commit.getParents()) {
+            if (left.isEmpty()) {
+                break;
+            }
+            Commit parent = Commit.getCommit(id);
+            String code = parent.fileCode(filename);
+            if (code == null) {
+                continue;
+            } else if (code.equals(s.code)) {
+                suspect(parent, code).lines.addAll(left);
+                left = new ArrayList<>();
+            } else {
+                left = pass(s.code, left, suspect(parent, code));
+            }
+        }
+        for (int[] line : left) {
+            commits[line[1]] = s.commit.sha1();
+        }
+    }
+
+    /** Hand those of LEFT, the lines of the version CODE, that the
+     * version of PARENT also has on to PARENT. Return the rest. */
+    private List<int[]> pass(String code, List<int[]> left,
+                             Suspect parent) {
+        Lines[] split = Lines.split(contents(parent.code), contents(code));
+        int[] older = new int[split[1].size()];
+        Arrays.fill(older, -1);
+        int i = 0, j = 0;
+        for (Diff.Hunk h : Diff.hunks(split[0].ids(), split[1].ids())) {
+            for (; j < h.bStart; i += 1, j += 1) {
+                older[j] = i;
+            }
+            i = h.aEnd;
+            j = h.bEnd;
+        }
+        for (; j < older.length; i += 1, j += 1) {
+            older[j] = i;
+        }
+        List<int[]> rest = new ArrayList<>();
+        for (int[] line : left) {
+            if (older[line[0]] >= 0) {
+                parent.lines.add(new int[] {older[line[0]], line[1]});
+            } else {
+                rest.add(line);
+            }
+        }
+        if (parent.lines.isEmpty()) {
+            suspects.remove(parent.commit.sha1());
+            queue.remove(parent);
+        }
+        return rest;
+    }
+
+    /** Return the suspect for the commit C, whose version of the file
+     * is CODE, queueing a new one if there is none. */
+    private Suspect suspect(Commit c, String code) {
+        Suspect s = suspects.get(c.sha1());
+        if (s == null) {
+            s = new Suspect(c, code);
+            suspects.put(c.sha1(), s);
+            queue.add(s);
+        }
+        return s;
+    }
+
+    /** Return the contents of the blob CODE, reading it only once. */
+    private byte[] contents(String code) {
+        return versions.computeIfAbsent(code, Blob::contentsOf);
+    }
+
+    /** Return the number of lines. */
+    public int size() {
+        return lines.size();
+    }
+
+    /** Return the SHA1 code of the commit that last changed line I,
+     * numbered from 0. */
+    public String commit(int i) {
+        return commits[i];
+    }
+
+    /** Return line I, numbered from 0, without its newline. */
+    public String line(int i) {
+        return lines.text(i);
+    }
+
+    /** A commit that may have changed some lines, with those lines as
+     * pairs of their number in its version and in the final one. */
+    private static final class Suspect {
+
+        /** The suspect commit C, whose version of the file is CODE. */
+        Suspect(Commit c, String code) {
+            this.commit = c;
+            this.code = code;
+        }
+
+        /** The commit. */
+        private final Commit commit;
+
+        /** The code of its version of the file. */
+        private final String code;
+
+        /** The lines it might be blamed for. */
+        private final List<int[]> lines = new ArrayList<>();
+    }
+
+    /** The name of the file. */
+    private final String filename;
+
+    /** The lines of the final version. */
+    private final Lines lines;
+
+    /** The commit blamed for each final line. */
+    private final String[] commits;
+
+    /** Suspects yet to be dealt with, by commit. */
+    private final Map<String, Suspect> suspects = new HashMap<>();
+
+    /** The same suspects, newest commit first. */
+    private final PriorityQueue<Suspect> queue = new PriorityQueue<>(
+            Comparator.comparingLong((Suspect s) -> s.commit.getTime())
+                    .reversed());
+
+    /** The contents of each version of the file read, by code. */
+    private final Map<String, byte[]> versions = new HashMap<>();
+}
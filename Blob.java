@@ -1,17 +1,36 @@
 package gitlet;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /** A file representing the blob that wraps a file in gitlet.
+ * A blob is named by the SHA1 code of its contents alone, so the same
+ * contents under any name, or after a rename, are stored once; the
+ * names are kept by the commits. It is stored raw rather than
+ * serialized: the bytes of MAGIC, then the file's contents unchanged.
+ * The contents thus start at a known offset and can be copied between
+ * files without passing through the heap. Blobs serialized by older
+ * versions, which were named by their contents and file name together,
+ * are still read; Migrate renames them.
  * @author AMK Somani
  * */
 public class Blob extends Saveable implements Serializable {
 
-    /** Represents a blob object wrapping around a file named STR. */
+    /** First bytes of a raw blob file. */
+    static final byte[] MAGIC = "GLB2".getBytes(StandardCharsets.UTF_8);
+
+    /** Represents a blob object wrapping around a file named STR, or
+     * around no file if STR is null. */
     private Blob(String str) {
         this.filename = str;
-        this.file = Utils.join(str);
+        this.file = (str == null) ? null : Repo.working(str);
     }
 
     /** Return, after creating and saving, a file FILENAME. */
@@ -22,6 +41,15 @@ public class Blob extends Saveable implements Serializable {
         return b;
     }
 
+    /** Return a blob of the file FILENAME holding CONTENTS, which is
+     * neither read from nor written to the working directory, nor
+     * saved. */
+    static Blob of(String filename, byte[] contents) {
+        Blob b = new Blob(filename);
+        b.serial = contents;
+        return b;
+    }
+
     /** Return after creating a blob of file FILENAME
      *  without saving it to the gitlet repo,
      * for comparison purposes. */
@@ -34,7 +62,6 @@ public class Blob extends Saveable implements Serializable {
     /** Serializing a file and storing it in local variable serial. */
     void serializeFile() {
         serial = Utils.readContents(file);
-        contents = Utils.readContentsAsString(file);
     }
 
     /** Returns true if the file contained in this blob exists
@@ -46,36 +73,153 @@ public class Blob extends Saveable implements Serializable {
     /** Return the blob associated in the given sha1 SHACODE in the
      * gitlet objects repo. */
     public static Blob get(String shaCode) {
-        File file = Utils.join(Repo.OBJECTS, shaCode + ".txt");
+        File file = Utils.join(Repo.objects(), shaCode + ".txt");
         if (!file.exists()) {
             return null;
         }
-        Blob b = Utils.readObject(file, Blob.class);
-        return b;
+        return read(file, shaCode);
+    }
+
+    /** Return the blob named SHACODE saved in the file FILE, raw or
+     * serialized. */
+    static Blob read(File file, String shaCode) {
+        if (!isRaw(file)) {
+            return Utils.readObject(file, Blob.class);
+        }
+        long start = Metrics.start();
+        Events.ObjectRead e = new Events.ObjectRead();
+        e.begin();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            in.skipNBytes(MAGIC.length);
+            Blob b = new Blob(null);
+            b.serial = in.readAllBytes();
+            if (Metrics.ENABLED) {
+                Metrics.record(Metrics.Op.READ_OBJECT, start,
+                        file.length());
+            }
+            read(e, shaCode, file.length());
+            return b;
+        } catch (IOException excp) {
+            throw Utils.error("Could not read blob %s.", shaCode);
+        }
+    }
+
+    /** Return the contents of the blob with the sha1 SHACODE, or no
+     * bytes if SHACODE is null or there is no such blob. */
+    public static byte[] contentsOf(String shaCode) {
+        Blob b = (shaCode == null) ? null : get(shaCode);
+        return (b == null) ? new byte[0] : b.serial;
+    }
+
+    /** Write the contents of the blob with the sha1 SHACODE to the file
+     * DEST, replacing what it held. The contents of a raw blob go from
+     * file to file by the operating system. Throws an error if there is
+     * no such blob, as after a shallow fetch. */
+    public static void writeTo(String shaCode, File dest)
+            throws GitletException {
+        File file = Utils.join(Repo.objects(), shaCode + ".txt");
+        if (!file.exists()) {
+            throw Utils.error("Blob %s is missing.", shaCode);
+        }
+        long offset = payloadOffset(file);
+        if (offset < 0) {
+            Utils.writeContents(dest, get(shaCode).serial);
+            return;
+        }
+        long start = Metrics.start();
+        Events.ObjectRead e = new Events.ObjectRead();
+        e.begin();
+        try (FileChannel in = FileChannel.open(file.toPath());
+             FileChannel out = FileChannel.open(dest.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            while (offset < size) {
+                offset += in.transferTo(offset, size - offset, out);
+            }
+            Metrics.record(Metrics.Op.READ_OBJECT, start, size);
+            read(e, shaCode, size);
+        } catch (IOException excp) {
+            throw Utils.error("Could not check out %s.", dest.getPath());
+        }
+    }
+
+    /** Record the read of the blob ID, of SIZE bytes, begun at E. */
+    private static void read(Events.ObjectRead e, String id, long size) {
+        if (e.shouldCommit()) {
+            e.id = id;
+            e.type = "blob";
+            e.size = size;
+            e.commit();
+        }
+    }
+
+    /** Returns true if the object file FILE holds a raw blob. */
+    static boolean isRaw(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the offset of the contents in the object file FILE, or -1
+     * if it does not hold a raw blob. */
+    static long payloadOffset(File file) {
+        return isRaw(file) ? MAGIC.length : -1;
     }
 
     /** Returns the unique SHA1 String code for the blob object. */
     public String shaCode() {
-        return Utils.sha1(serial, filename);
+        Events.BlobHash e = new Events.BlobHash();
+        e.begin();
+        String code = Utils.sha1(serial);
+        if (e.shouldCommit()) {
+            e.path = filename;
+            e.size = serial.length;
+            e.commit();
+        }
+        return code;
     }
 
 
+    /** Returns true if CODE is the code an older version gave this
+     * serialized blob, which covered its file name as well as its
+     * contents. */
+    boolean hasNamedCode(String code) {
+        return filename != null && Utils.sha1(serial, filename).equals(code);
+    }
+
     /** Saves the object to objects directory with its respective shacode. */
     public void saveFile() {
         saveCode(shaCode());
     }
 
     /** Save a file of the name CODE in the objects directory
-     * of the gitlet repo.
+     * of the gitlet repo, in the raw format.
      * Assumes that the object directory exists.
      */
     public void saveCode(String code) {
-        assert Repo.OBJECTS.exists();
-        File obj = Utils.join(Repo.OBJECTS, code + ".txt");
-        if (!obj.exists()) {
-            Repo.createFile(obj);
+        assert Repo.objects().exists();
+        Events.ObjectWrite e = new Events.ObjectWrite();
+        e.begin();
+        e.id = code;
+        e.type = "blob";
+        File obj = Utils.join(Repo.objects(), code + ".txt");
+        if (obj.exists()) {
+            e.commit();
+            return;
+        }
+        long start = Metrics.start();
+        try {
+            writeObjectFile(obj, MAGIC, serial);
+        } catch (IOException excp) {
+            throw Utils.error("Could not save blob %s.", code);
         }
-        Utils.writeObject(obj, this);
+        Metrics.record(Metrics.Op.WRITE_OBJECT, start,
+                MAGIC.length + serial.length);
+        e.size = MAGIC.length + serial.length;
+        e.commit();
     }
 
     /** Returns the file stored in the blob. */
@@ -83,17 +227,22 @@ public class Blob extends Saveable implements Serializable {
         return file;
     }
 
-    /** Returns the filename associated with this blob. */
+    /** Returns the filename associated with this blob, or null if it
+     * was read from an object that does not record one. */
     public String filename() {
         return filename;
     }
 
     /** Returns the contents of the file stored in the blob. */
     public String contents() {
-        return contents;
+        return new String(serial, StandardCharsets.UTF_8);
     }
 
-    /** The name of the blob's file name. */
+    /** The serialVersionUID older versions computed for this class,
+     * so that the blobs they serialized can still be read. */
+    private static final long serialVersionUID = 603971882969416570L;
+
+    /** The name of the blob's file, or null if it is not known. */
     private String filename;
 
     /** File object associated with this blob. */
@@ -101,7 +250,4 @@ public class Blob extends Saveable implements Serializable {
 
     /** Serialized representation of the file. */
     private byte[] serial;
-
-    /** The contents of a file. */
-    private String contents;
 }
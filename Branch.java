@@ -1,7 +1,15 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.time.Instant;
 
 /** An object that represents a branch in the gitlet tree.
@@ -21,8 +29,7 @@ public class Branch {
     /** Makes this branch the currently active branch.
      * Assumes that the head file exists in the gitlet repo*/
     public void setHead() {
-        assert Repo.HEAD.exists();
-        Utils.writeContents(Repo.HEAD, name);
+        setHeadBranch(name);
     }
 
     /** Add this branch to the gitlet directory if it does not
@@ -30,7 +37,7 @@ public class Branch {
      * code for the branches' most recent commit.
      */
     public void makeBranchInDir() {
-        File branch = Utils.join(Repo.BRANCHES, name + ".txt");
+        File branch = Utils.join(Repo.branches(), name + ".txt");
         if (branch.exists()) {
             return;
         }
@@ -58,108 +65,210 @@ public class Branch {
      * to the SHA1 code String COMMIT.
      */
     public static void updateBranch(String name, String commit) {
-        File branch = Utils.join(Repo.BRANCHES,
+        File branch = Utils.join(Repo.branches(),
                 name + ".txt");
         assert branch.exists();
         if (!commit.equals("")) {
+            Events.RefUpdate e = new Events.RefUpdate();
+            e.begin();
             Utils.writeContents(branch, commit);
+            Events.refUpdated(e, name, commit);
         }
     }
 
+    /** Point the branch BRANCH of the remote REMOTE, stored locally as
+     * REMOTE/BRANCH, at the SHA1 code String COMMIT. */
+    public static void updateRemoteBranch(String remote, String branch,
+                                          String commit) {
+        Events.RefUpdate e = new Events.RefUpdate();
+        e.begin();
+        Repo.createDir(Utils.join(Repo.branches(), remote));
+        File file = Utils.join(Repo.branches(), remote, branch + ".txt");
+        Repo.createFile(file);
+        Utils.writeContents(file, commit);
+        Events.refUpdated(e, remote + "/" + branch, commit);
+    }
+
     /** Merge the given branch NAME with the current head branch. */
     public static void merge(String name) {
         merge(head(), name);
     }
 
-    /** Merge the branch names CURRENT into GIVEN. */
+    /** Merge the branch named GIVEN into the branch named CURRENT. If
+     * CURRENT is an ancestor of GIVEN it is fast-forwarded instead. */
     public static void merge(String current, String given)
             throws GitletException {
+        Commit currentCommit = Commit.getCommit(getBranchCode(current));
+        Commit givenCommit = Commit.getCommit(getBranchCode(given));
+        Events.MergePhase phase =
+                Events.mergePhase(current, given, "ancestor");
         Commit ancestor = Commit.findCommonAncestor(current, given);
+        phase.commit();
         if (ancestor == null) {
+            throw Utils.error(
+                    "Given branch shares no history with the current "
+                            + "branch.");
+        }
+        if (ancestor.sha1().equals(givenCommit.sha1())) {
+            throw Utils.error(
+                    "Given branch is an ancestor of the current branch.");
+        }
+        if (ancestor.sha1().equals(currentCommit.sha1())) {
+            fastForward(current, currentCommit, givenCommit);
+            Utils.message("Current branch fast-forwarded.");
             return;
         }
-        Commit currentCommit = Commit.getCommit(getBranchCode(current));
-        Commit givenCommit = Commit.getCommit(getBranchCode(given));
-        List<String> changedCurrent =
-                Commit.changedFiles(currentCommit, ancestor);
-        List<String> changedGiven = Commit.changedFiles(givenCommit, ancestor);
-        List<String> removedGiven =
-                Commit.removedFiles(givenCommit, ancestor);
-        List<String> removedCurrent =
-                Commit.removedFiles(currentCommit, ancestor);
-        for (String filename: changedGiven) {
-            if (!changedCurrent.contains(filename)) {
-                if (!ancestor.containsFile(filename)) {
-                    if (!currentCommit.containsFile(filename)) {
-                        givenCommit.checkout(filename);
-                        Stage.stage(filename);
-                    }
+        merge(current, given, currentCommit, givenCommit, ancestor);
+    }
+
+    /** Merge the branch named GIVEN, whose head is GIVENCOMMIT, into the
+     * branch named CURRENT, whose head is CURRENTCOMMIT, given their
+     * split point ANCESTOR. Only the files changed on the given side
+     * since the split point are touched. */
+    private static void merge(String current, String given,
+                              Commit currentCommit, Commit givenCommit,
+                              Commit ancestor) throws GitletException {
+        Events.MergePhase phase = Events.mergePhase(current, given, "diff");
+        TreeDiff ours = new TreeDiff(ancestor, currentCommit);
+        TreeDiff theirs = new TreeDiff(ancestor, givenCommit);
+        phase.commit();
+        phase = Events.mergePhase(current, given, "renames");
+        Set<String> handled = mergeRenames(currentCommit, givenCommit,
+                ancestor, ours, theirs);
+        phase.commit();
+        phase = Events.mergePhase(current, given, "apply");
+        for (TreeDiff.Entry t : theirs.entries()) {
+            String filename = t.name();
+            TreeDiff.Entry o = ours.get(filename);
+            if (handled.contains(filename)) {
+                continue;
+            } else if (o == null) {
+                if (t.kind() == TreeDiff.Kind.REMOVED) {
+                    Stage.antistage(filename);
+                } else if (!Sparse.includes(filename)) {
+                    Stage.stageCode(filename, t.newCode());
                 } else {
-                    currentCommit.checkout(filename);
+                    givenCommit.checkout(filename);
                     Stage.stage(filename);
                 }
+            } else if (o.kind() == TreeDiff.Kind.REMOVED
+                    && t.kind() == TreeDiff.Kind.REMOVED) {
+                continue;
+            } else if (o.kind() == TreeDiff.Kind.REMOVED
+                    || t.kind() == TreeDiff.Kind.REMOVED
+                    || !o.newCode().equals(t.newCode())) {
+                handleMergeConflict(t.oldCode(), o.newCode(),
+                        t.newCode(), filename);
             }
         }
-        for (String filename: removedGiven) {
-            if (!changedCurrent.contains(filename)
-                    && !removedCurrent.contains(filename)) {
-                Stage.antistage(filename);
-            }
-        }
-        for (String filename: changedGiven) {
-            if (changedCurrent.contains(filename)) {
-                if (!givenCommit.fileCode(filename).equals(
-                        currentCommit.fileCode(filename))) {
-                    handleMergeConflict(currentCommit.fileCode(filename),
-                            givenCommit.fileCode(filename), filename);
-                }
-            }
-            if (removedCurrent.contains(filename)) {
-                handleMergeConflict(currentCommit.fileCode(filename),
-                        givenCommit.fileCode(filename), filename);
-            }
-        }
-        for (String filename: changedCurrent) {
-            if (removedGiven.contains(filename)) {
-                handleMergeConflict(currentCommit.fileCode(filename),
-                        givenCommit.fileCode(filename), filename);
-            } else if (!changedGiven.contains(filename)) {
-                currentCommit.checkout(filename);
-                Stage.stage(filename);
-            }
-        }
+        phase.commit();
+        phase = Events.mergePhase(current, given, "commit");
         Commit c = Commit.create("Merged "
                         + given + " into " + current + ".",
                 Instant.now().getEpochSecond(), getBranchCode(given));
         updateBranch(current, c.sha1());
+        phase.commit();
     }
 
-    /** Handles a merge conflict for FILENAME for CODECURRENT and
-     * CODEGIVEN while merging. */
-    public static void handleMergeConflict(String codeCurrent,
-                                           String codeGiven, String filename) {
-        Blob currentFile = Blob.get(codeCurrent);
-        Blob givenFile = Blob.get(codeGiven);
-        String newValue = "<<<<<<< HEAD\n";
-        newValue += (currentFile != null && currentFile.exists())
-                ? currentFile.contents() : "";
-        newValue += "=======\n";
-        newValue += (givenFile != null && givenFile.exists())
-                ? givenFile.contents() : "";
-        newValue += ">>>>>>>\n";
-        File write = Utils.join("", filename);
-        if (!write.exists()) {
-            Repo.createFile(write);
+    /** Carry changes across renames while merging GIVENCOMMIT into
+     * CURRENTCOMMIT with split point ANCESTOR, where OURS and THEIRS are
+     * the changes on each side. A file renamed on one side and edited
+     * on the other is merged under its new name instead of conflicting.
+     * Returns the names, old and new, of the files dealt with. */
+    private static Set<String> mergeRenames(Commit currentCommit,
+                                            Commit givenCommit,
+                                            Commit ancestor,
+                                            TreeDiff ours,
+                                            TreeDiff theirs) {
+        Set<String> handled = new HashSet<>();
+        Map<String, String> renamedCurrent =
+                Renames.detect(ancestor.files(), currentCommit.files());
+        Map<String, String> renamedGiven =
+                Renames.detect(ancestor.files(), givenCommit.files());
+        for (Map.Entry<String, String> e : renamedCurrent.entrySet()) {
+            String old = e.getKey(), now = e.getValue();
+            if (theirs.changed(old)) {
+                handleMergeConflict(ancestor.fileCode(old),
+                        currentCommit.fileCode(now),
+                        givenCommit.fileCode(old), now);
+                handled.add(old);
+                handled.add(now);
+            }
+        }
+        for (Map.Entry<String, String> e : renamedGiven.entrySet()) {
+            String old = e.getKey(), now = e.getValue();
+            if (ours.changed(old) && !handled.contains(now)) {
+                handleMergeConflict(ancestor.fileCode(old),
+                        currentCommit.fileCode(old),
+                        givenCommit.fileCode(now), now);
+                Stage.antistage(old);
+                handled.add(old);
+                handled.add(now);
+            }
         }
-        Utils.writeContents(write, newValue);
-        Stage.stage(filename);
-        System.out.println("Encountered a merge conflict.");
+        return handled;
     }
 
+    /** Move the branch named BRANCH forward from its head FROM to the
+     * descendant commit TO, rewriting only the working files that differ
+     * between the two. */
+    public static void fastForward(String branch, Commit from, Commit to) {
+        Commit.checkoutChanges(from, to);
+        updateBranch(branch, to.sha1());
+        Stage.clearStage();
+    }
+
+    /** Fetch BRANCH from the remote named REMOTE, going back at most
+     * DEPTH commits if DEPTH is positive, and merge it into the current
+     * head branch. */
+    public static void pull(String remote, String branch, int depth)
+            throws GitletException {
+        Remote.fetch(remote, branch, depth);
+        String given = remote + "/" + branch;
+        checkUntracked(given);
+        merge(head(), given);
+    }
+
+    /** Handles a merge of FILENAME, changed on both sides, by merging
+     * its versions CODECURRENT and CODEGIVEN line by line against their
+     * common version CODEANCESTOR. Any code may be null for a missing
+     * file. The result is staged, and written to the working directory
+     * unless the sparse-checkout patterns leave FILENAME out, as
+     * checkout would; regions both sides changed differently are marked
+     * as conflicts either way. */
+    public static void handleMergeConflict(String codeAncestor,
+                                           String codeCurrent,
+                                           String codeGiven,
+                                           String filename) {
+        boolean included = Sparse.includes(filename);
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        boolean conflict;
+        try (OutputStream out = included
+                ? new BufferedOutputStream(Files.newOutputStream(
+                        Repo.working(filename).toPath()))
+                : kept) {
+            conflict = Merge3.merge(Blob.contentsOf(codeAncestor),
+                    Blob.contentsOf(codeCurrent),
+                    Blob.contentsOf(codeGiven), out);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", filename);
+        }
+        if (included) {
+            Stage.stage(filename);
+        } else {
+            Blob b = Blob.of(filename, kept.toByteArray());
+            String code = b.shaCode();
+            b.saveCode(code);
+            Stage.stageCode(filename, code);
+        }
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
 
     /** Delete a branch NAME assuming that it exists. */
     public static void delete(String name) {
-        File branch = Utils.join(Repo.BRANCHES,
+        File branch = Utils.join(Repo.branches(),
                 name + ".txt");
         assert branch.exists();
         branch.delete();
@@ -169,7 +278,7 @@ public class Branch {
      * as per the status request. */
     public static String display() {
         List<String> branchNames = Utils.plainFilenamesIn(
-                ".gitlet/branches");
+                Repo.branches());
         String active = head();
         String result = "";
         for (String branch: branchNames) {
@@ -186,37 +295,43 @@ public class Branch {
     /** Return the name of the currently active branch. Assume that
      * the head file in the github repository exists. */
     public static String head() {
-        assert Repo.HEAD.exists();
-        String name = Utils.readContentsAsString(Repo.HEAD);
+        assert Repo.head().exists();
+        long start = Metrics.start();
+        String name = Utils.readContentsAsString(Repo.head());
+        Metrics.record(Metrics.Op.READ_REF, start, name.length());
         return name.trim();
     }
 
     /** Set the head branch to be the branch NAME. */
     public static void setHeadBranch(String name) {
-        assert Repo.HEAD.exists();
-        Utils.writeContents(Repo.HEAD, name);
+        assert Repo.head().exists();
+        Events.RefUpdate e = new Events.RefUpdate();
+        e.begin();
+        Utils.writeContents(Repo.head(), name);
+        Events.refUpdated(e, "HEAD", name);
     }
 
     /** Checkout a given branch with name NAME. */
     public static void checkout(String name) {
         String branchCode = Branch.getBranchCode(name);
-        Commit branchCommit = Commit.getCommit(branchCode);
-        branchCommit.checkout();
-        List<String> workingfiles = Utils.plainFilenamesIn(".");
-        for (String filename: workingfiles) {
-            if (!branchCommit.containsFile(filename)) {
-                if (!Repo.neverConsider(filename)) {
-                    Utils.restrictedDelete(filename);
-                }
-            }
-        }
+        Commit.checkoutChanges(Commit.currCommitObj(),
+                Commit.getCommit(branchCode));
+    }
+
+    /** Returns true if NAME, received from a peer, can name a branch
+     * of the repository: it is not empty and names a file of the
+     * branches directory itself. */
+    static boolean isValidName(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..")
+                && name.indexOf('/') < 0 && name.indexOf('\\') < 0
+                && name.indexOf('\0') < 0;
     }
 
     /** Check if a branch with NAME already exists,
      * and throw an error if it does. */
     public static void checkDouble(String name)
             throws GitletException {
-        File branch = Utils.join(Repo.BRANCHES, name + ".txt");
+        File branch = Utils.join(Repo.branches(), name + ".txt");
         if (branch.exists()) {
             throw Utils.error("A branch with that name already exists.");
         }
@@ -225,7 +340,7 @@ public class Branch {
     /** Check if a branch NAME exists, and throw an error if it does not. */
     public static void checkExists(String name)
             throws GitletException {
-        File branch = Utils.join(Repo.BRANCHES, name + ".txt");
+        File branch = Utils.join(Repo.branches(), name + ".txt");
         if (!branch.exists()) {
             throw Utils.error("No such branch exists.");
         }
@@ -234,7 +349,7 @@ public class Branch {
     /** Check if a branch NAME exists, and throw an error if it does not. */
     public static void checkExistsRm(String name)
             throws GitletException {
-        File branch = Utils.join(Repo.BRANCHES, name + ".txt");
+        File branch = Utils.join(Repo.branches(), name + ".txt");
         if (!branch.exists()) {
             throw Utils.error(" A branch with that name does not exist.");
         }
@@ -249,24 +364,22 @@ public class Branch {
         }
     }
 
-    /** Return the head of the branch NAME from remote REPO linked by file F
-     * or null if the branch does not exist. */
-    public static Commit getRemoteHead(String name, File f) {
-        String path = Utils.readContentsAsString(f);
-        File branchFile = Utils.join(path, "branches", name + ".txt");
+    /** Return the head of the branch NAME in the remote gitlet directory
+     * REPO, or null if the branch does not exist. */
+    public static Commit getRemoteHead(String name, File repo) {
+        File branchFile = Utils.join(repo, "branches", name + ".txt");
         if (!branchFile.exists()) {
             return null;
         } else {
             return Commit.remoteGetCommit(
-                    Utils.readContentsAsString(branchFile), path);
+                    Utils.readContentsAsString(branchFile), repo.getPath());
         }
     }
 
-    /** Set the head of the remote REPO linked by file F's BRANCHNAME
-     * to String ID. */
+    /** Set the head of the branch BRANCHNAME in the remote gitlet
+     * directory REPO to String ID. */
     public static void setRemoteHead(File repo, String branchname, String iD) {
-        String path = Utils.readContentsAsString(repo);
-        File branchFile = Utils.join(path, "branches", branchname + ".txt");
+        File branchFile = Utils.join(repo, "branches", branchname + ".txt");
         Utils.writeContents(branchFile, iD);
     }
 
@@ -285,13 +398,14 @@ public class Branch {
         Commit branchCommit = Commit.getCommit(branchCode);
         Commit lastCommit = Commit.currCommitObj();
         Stage currStage = Stage.savedStage();
-        List<String> workingfiles = Utils.plainFilenamesIn(".");
+        List<String> workingfiles = Utils.plainFilenamesIn(Repo.root());
         for (String filename: workingfiles) {
             if (!Repo.neverConsider(filename)) {
                 if (!lastCommit.containsFile(filename)) {
                     if (currStage == null
                             || !currStage.containsFile(filename)) {
-                        if (branchCommit.containsFile(filename)) {
+                        if (branchCommit.containsFile(filename)
+                                && Sparse.includes(filename)) {
                             throw Utils.error(
                                     "There is an untracked file in the way; "
                                             + "delete it, "
@@ -303,15 +417,72 @@ public class Branch {
         }
     }
 
+    /** Return the SHA1 codes of the heads of every branch, including
+     * the branches fetched from remotes. */
+    public static Set<String> allHeads() {
+        Set<String> heads = new HashSet<>();
+        addHeads(Repo.branches(), heads);
+        return heads;
+    }
+
+    /** Point every branch, fetched ones included, whose head is a key of
+     * IDS at the commit that it maps to. */
+    public static void moveHeads(Map<String, String> ids) {
+        moveHeads(Repo.branches(), ids);
+    }
+
+    /** Point every branch file under DIR whose head is a key of IDS at
+     * the commit that it maps to. */
+    private static void moveHeads(File dir, Map<String, String> ids) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                moveHeads(f, ids);
+                continue;
+            }
+            String id = ids.get(Utils.readContentsAsString(f).trim());
+            if (id != null) {
+                Events.RefUpdate e = new Events.RefUpdate();
+                e.begin();
+                Utils.writeContents(f, id);
+                Events.refUpdated(e, f.getName(), id);
+            }
+        }
+    }
+
+    /** Add the contents of every branch file under DIR to HEADS. */
+    private static void addHeads(File dir, Set<String> heads) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                addHeads(f, heads);
+            } else {
+                long start = Metrics.start();
+                String code = Utils.readContentsAsString(f);
+                Metrics.record(Metrics.Op.READ_REF, start, code.length());
+                heads.add(code.trim());
+            }
+        }
+    }
+
     /** Return the most recent commit SHA code associated
      * with a branch named BRANCH. */
     public static String getBranchCode(String branch) {
-        assert Repo.BRANCHES.exists();
+        assert Repo.branches().exists();
         if (branch.equals("")) {
             return "";
         }
-        File file = Utils.join(Repo.BRANCHES, branch + ".txt");
-        return Utils.readContentsAsString(file);
+        long start = Metrics.start();
+        File file = Utils.join(Repo.branches(), branch + ".txt");
+        String code = Utils.readContentsAsString(file);
+        Metrics.record(Metrics.Op.READ_REF, start, code.length());
+        return code;
     }
 
     /** The name of this branch. */
@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/** The hashing and saving of many working files at once, as a pipeline
+ * whose stages run together, each on its own threads, joined by bounded
+ * queues. The first stage goes through the file names and passes over
+ * the files whose time and size show that they are known; the second
+ * reads the rest; the third hashes them and drops those whose blobs
+ * already exist; the last writes the new blobs. Reading and writing
+ * wait on the disk while hashing keeps the cores busy, so a large
+ * import goes at the speed of the disk rather than of one core. The
+ * queues bound how many files are held in memory at once. Blobs are
+ * stored raw, so there is no stage that compresses them.
+ * @author AMK Somani
+ */
+class BulkAdd {
+
+    /** Number of threads reading files. */
+    static final int READERS = 4;
+
+    /** Number of threads hashing files. */
+    static final int HASHERS =
+            Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /** Number of threads writing blobs. */
+    static final int WRITERS = 4;
+
+    /** Most files waiting between two stages. */
+    static final int QUEUE = 64;
+
+    /** One working file going through the pipeline. */
+    static final class Item {
+
+        /** The working file NAME. */
+        Item(String name) {
+            this.name = name;
+        }
+
+        /** Return the file's name. */
+        String name() {
+            return name;
+        }
+
+        /** Return the file's blob code. */
+        String code() {
+            return code;
+        }
+
+        /** Return the file's time and size, or null if unknown. */
+        long[] stat() {
+            return stat;
+        }
+
+        /** The file's name. */
+        private final String name;
+
+        /** The file's time and size. */
+        private long[] stat;
+
+        /** The file's contents, until its blob is written. */
+        private byte[] contents;
+
+        /** The file's blob code. */
+        private String code;
+    }
+
+    /** Return the working files NAMES, each with its blob code, time
+     * and size, saving the blobs that do not yet exist. KNOWN gives the
+     * code of a file from its name and its time and size if these show
+     * that it has not changed since it was last hashed, and null
+     * otherwise. Files are returned as they come out of the pipeline. */
+    static List<Item> run(List<String> names,
+                          BiFunction<String, long[], String> known)
+            throws GitletException {
+        return new BulkAdd(names, known).run();
+    }
+
+    /** A pipeline for the files NAMES, passing over those KNOWN. */
+    private BulkAdd(List<String> names,
+                    BiFunction<String, long[], String> known) {
+        this.names = names;
+        this.known = known;
+    }
+
+    /** Run every stage and return the files. */
+    private List<Item> run() {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(this::walk);
+        stage(tasks, READERS, read, hash, this::read);
+        stage(tasks, HASHERS, hash, write, this::hash);
+        stage(tasks, WRITERS, write, null, this::write);
+        Utils.runAll(tasks, tasks.size());
+        if (failure.get() != null) {
+            throw Utils.error("Cannot add %s.", failure.get());
+        }
+        return new ArrayList<>(done);
+    }
+
+    /** Queue each file for reading unless it is known. */
+    private Void walk() throws InterruptedException {
+        try {
+            for (String name : names) {
+                Item item = new Item(name);
+                item.stat = Stage.stat(name);
+                item.code = known.apply(name, item.stat);
+                if (item.code != null) {
+                    done.add(item);
+                } else {
+                    read.put(item);
+                }
+            }
+        } finally {
+            read.put(END);
+        }
+        return null;
+    }
+
+    /** Read the contents of ITEM, and queue it for hashing. */
+    private void read(Item item) throws InterruptedException {
+        item.contents = Utils.readContents(Repo.working(item.name));
+        hash.put(item);
+    }
+
+    /** Hash ITEM, and queue it for writing unless its blob exists. */
+    private void hash(Item item) throws InterruptedException {
+        item.code = Blob.of(item.name, item.contents).shaCode();
+        File obj = Utils.join(Repo.objects(), item.code + ".txt");
+        if (obj.isFile()) {
+            item.contents = null;
+            done.add(item);
+        } else {
+            write.put(item);
+        }
+    }
+
+    /** Save the blob of ITEM. */
+    private void write(Item item) {
+        Blob.of(item.name, item.contents).saveCode(item.code);
+        item.contents = null;
+        done.add(item);
+    }
+
+    /** Add to TASKS the THREADS workers of one stage, each taking files
+     * from IN and doing WORK on them until it takes END. The last worker
+     * to finish puts END on OUT, if there is one. A file whose work
+     * fails is noted and dropped, so that the stages after it still
+     * finish. */
+    private void stage(List<Callable<Void>> tasks, int threads,
+                       BlockingQueue<Item> in, BlockingQueue<Item> out,
+                       Work work) {
+        AtomicInteger running = new AtomicInteger(threads);
+        for (int t = 0; t < threads; t += 1) {
+            tasks.add(() -> {
+                try {
+                    for (Item item = in.take(); item != END;
+                         item = in.take()) {
+                        try {
+                            work.accept(item);
+                        } catch (RuntimeException excp) {
+                            failure.compareAndSet(null, item.name);
+                        }
+                    }
+                    in.put(END);
+                } finally {
+                    if (running.decrementAndGet() == 0 && out != null) {
+                        out.put(END);
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    /** The work one stage does on each file. */
+    private interface Work {
+        /** Do this work on ITEM. */
+        void accept(Item item) throws InterruptedException;
+    }
+
+    /** Marks the end of the files on a queue. */
+    private static final Item END = new Item(null);
+
+    /** The names of the files. */
+    private final List<String> names;
+
+    /** Gives the codes of files known to be unchanged. */
+    private final BiFunction<String, long[], String> known;
+
+    /** Files waiting to be read. */
+    private final BlockingQueue<Item> read = new ArrayBlockingQueue<>(QUEUE);
+
+    /** Files waiting to be hashed. */
+    private final BlockingQueue<Item> hash = new ArrayBlockingQueue<>(QUEUE);
+
+    /** Files waiting to be written. */
+    private final BlockingQueue<Item> write =
+            new ArrayBlockingQueue<>(QUEUE);
+
+    /** Files through the pipeline. */
+    private final Queue<Item> done = new ConcurrentLinkedQueue<>();
+
+    /** The name of the first file that could not be added, if any. */
+    private final AtomicReference<String> failure = new AtomicReference<>();
+}
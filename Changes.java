@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Displays the changes between two trees of files, such as a commit's.
+ * Files whose codes are equal are skipped without reading them; the
+ * others are paired up by Renames, compared line by line with Diff and
+ * shown in unified format, or only counted.
+ * @author AMK Somani
+ */
+class Changes {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Widest bar of +'s and -'s drawn for one file by a summary. */
+    static final int BAR = 50;
+
+    /** Changes from the files FROM to the files TO. If WORKING, the
+     * contents of TO are read from the working directory instead of
+     * from blobs. */
+    Changes(Tree from, Tree to, boolean working) {
+        this.from = from;
+        this.to = to;
+        this.working = working;
+    }
+
+    /** Return the changes from the current commit to the index, that
+     * is, the changes a commit would record. */
+    static Changes staged() {
+        return new Changes(Commit.currCommitObj().tree(), indexFiles(),
+                false);
+    }
+
+    /** Return the changes from the index to the working directory that
+     * have not been staged. */
+    static Changes unstaged() {
+        Tree files = indexFiles();
+        Map<String, String> index = new TreeMap<>();
+        Map<String, String> work = new TreeMap<>();
+        Stage stage = Stage.savedStage();
+        for (int i = 0; i < files.size(); i += 1) {
+            String filename = files.name(i);
+            if (!Sparse.includes(filename)) {
+                continue;
+            }
+            index.put(filename, files.code(i));
+            if (Repo.working(filename).isFile()) {
+                work.put(filename, stage.workingCode(filename));
+            }
+        }
+        return new Changes(Tree.of(index), Tree.of(work), true);
+    }
+
+    /** Return the changes from commit FIRST to commit SECOND. */
+    static Changes between(Commit first, Commit second) {
+        return new Changes(first.tree(), second.tree(), false);
+    }
+
+    /** Return the files of the current commit with the staged additions
+     * and removals applied. */
+    static Tree indexFiles() {
+        Stage s = Stage.savedStage();
+        return Commit.currCommitObj().tree().with(s.shaMap(),
+                s.removeList().keySet());
+    }
+
+    /** Write every change in unified format to OUT. A file that was
+     * renamed is shown as one change from its old name to its new. */
+    void show(OutputStream out) throws IOException {
+        Map<String, String> renamed = renames();
+        for (String name : changedFiles(renamed)) {
+            String old = renamed.getOrDefault(name, name);
+            String a = from.code(old), b = to.code(name);
+            Lines[] lines = Lines.split(Blob.contentsOf(a),
+                    contentsTo(b, name));
+            List<Diff.Hunk> hunks =
+                    Diff.hunks(lines[0].ids(), lines[1].ids());
+            write(out, "diff --gitlet a/%s b/%s\n", old, name);
+            if (!old.equals(name)) {
+                write(out, "rename from %s\nrename to %s\n", old, name);
+                if (hunks.isEmpty()) {
+                    continue;
+                }
+            }
+            write(out, "--- %s\n", a == null ? "/dev/null" : "a/" + old);
+            write(out, "+++ %s\n", b == null ? "/dev/null" : "b/" + name);
+            showHunks(out, lines[0], lines[1], hunks);
+        }
+        out.flush();
+    }
+
+    /** Write to OUT a summary of how many lines each file gained and
+     * lost. */
+    void showStat(OutputStream out) throws IOException {
+        int files = 0;
+        long added = 0, removed = 0;
+        Map<String, String> renamed = renames();
+        for (String name : changedFiles(renamed)) {
+            String old = renamed.getOrDefault(name, name);
+            Lines[] lines = Lines.split(Blob.contentsOf(from.code(old)),
+                    contentsTo(to.code(name), name));
+            long plus = 0, minus = 0;
+            for (Diff.Hunk h : Diff.hunks(lines[0].ids(), lines[1].ids())) {
+                minus += h.aEnd - h.aStart;
+                plus += h.bEnd - h.bStart;
+            }
+            long total = plus + minus;
+            long scale = Math.max(1, (total + BAR - 1) / BAR);
+            write(out, " %s | %d %s%s\n",
+                    old.equals(name) ? name : old + " => " + name, total,
+                    "+".repeat((int) ((plus + scale - 1) / scale)),
+                    "-".repeat((int) ((minus + scale - 1) / scale)));
+            files += 1;
+            added += plus;
+            removed += minus;
+        }
+        if (files > 0) {
+            write(out, " %d file%s changed, %d insertion%s(+), "
+                            + "%d deletion%s(-)\n",
+                    files, files == 1 ? "" : "s", added,
+                    added == 1 ? "" : "s", removed, removed == 1 ? "" : "s");
+        }
+        out.flush();
+    }
+
+    /** Return the renames among the changes, as a mapping from new name
+     * to old name. Renames are not looked for in the working directory,
+     * whose files have no blobs. */
+    private Map<String, String> renames() {
+        Map<String, String> result = new TreeMap<>();
+        if (!working) {
+            for (Map.Entry<String, String> e
+                    : Renames.detect(from.asMap(), to.asMap()).entrySet()) {
+                result.put(e.getValue(), e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** Return the names of the files whose codes differ, in order,
+     * leaving out the old names of the files in RENAMED, a mapping from
+     * new name to old name. */
+    private List<String> changedFiles(Map<String, String> renamed) {
+        Set<String> old = new HashSet<>(renamed.values());
+        List<String> names = new ArrayList<>();
+        for (TreeDiff.Entry e : new TreeDiff(from, to).entries()) {
+            if (!old.contains(e.name())) {
+                names.add(e.name());
+            }
+        }
+        return names;
+    }
+
+    /** Return the contents of FILENAME with code CODE on the TO side. */
+    private byte[] contentsTo(String code, String filename) {
+        if (code == null) {
+            return new byte[0];
+        }
+        return working ? Utils.readContents(Repo.working(filename))
+                : Blob.contentsOf(code);
+    }
+
+    /** Write HUNKS, the differences between A and B, to OUT as unified
+     * diff hunks, joining those that are close enough to share lines of
+     * context. */
+    private static void showHunks(OutputStream out, Lines a, Lines b,
+                                  List<Diff.Hunk> hunks) throws IOException {
+        int i = 0;
+        while (i < hunks.size()) {
+            int j = i;
+            while (j + 1 < hunks.size()
+                    && hunks.get(j + 1).aStart - hunks.get(j).aEnd
+                        <= 2 * CONTEXT) {
+                j += 1;
+            }
+            Diff.Hunk first = hunks.get(i), last = hunks.get(j);
+            int aLo = Math.max(0, first.aStart - CONTEXT);
+            int aHi = Math.min(a.size(), last.aEnd + CONTEXT);
+            int bLo = first.bStart - (first.aStart - aLo);
+            int bHi = last.bEnd + (aHi - last.aEnd);
+            write(out, "@@ -%s +%s @@\n", range(aLo, aHi), range(bLo, bHi));
+            int pos = aLo;
+            for (int k = i; k <= j; k += 1) {
+                Diff.Hunk h = hunks.get(k);
+                for (; pos < h.aStart; pos += 1) {
+                    a.writeLine(out, pos, ' ');
+                }
+                for (int x = h.aStart; x < h.aEnd; x += 1) {
+                    a.writeLine(out, x, '-');
+                }
+                for (int y = h.bStart; y < h.bEnd; y += 1) {
+                    b.writeLine(out, y, '+');
+                }
+                pos = h.aEnd;
+            }
+            for (; pos < aHi; pos += 1) {
+                a.writeLine(out, pos, ' ');
+            }
+            i = j + 1;
+        }
+    }
+
+    /** Return the unified diff form of the lines LO up to HI. */
+    private static String range(int lo, int hi) {
+        int count = hi - lo;
+        return (count == 0 ? lo : lo + 1) + "," + count;
+    }
+
+    /** Write the String formed from FORMAT and ARGS to OUT. */
+    private static void write(OutputStream out, String format,
+                              Object... args) throws IOException {
+        out.write(String.format(format, args)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return a stream writing to the standard output. */
+    static OutputStream stdout() {
+        return new BufferedOutputStream(System.out, 1 << 16);
+    }
+
+    /** Files of the side changed from. */
+    private final Tree from;
+
+    /** Files of the side changed to. */
+    private final Tree to;
+
+    /** True if the TO side is the working directory. */
+    private final boolean working;
+}
@@ -1,23 +1,49 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import java.io.File;
 import java.util.Set;
 import java.util.Stack;
 import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 /** A commit class is a correspondent to a commit stored in the
  * gitlet directory, saving a snapshot of the memory of the
  * directory that is staged or had been tracked previously for
- * retrieval in the future.
+ * retrieval in the future. A commit is saved in a canonical encoding,
+ * the same for equal commits, and named by the SHA1 code of that
+ * encoding, which is computed once, when the commit is complete.
+ * Commits serialized by older versions are still read, under the codes
+ * they were saved with; Migrate writes them again in the encoding.
  * @author AMK Somani
  */
 public class Commit extends Saveable implements Serializable {
 
+    /** First bytes of a commit file in the canonical encoding. */
+    static final byte[] MAGIC = "GLC1".getBytes(StandardCharsets.UTF_8);
+
+    /** Largest number of files written at the same time by a checkout. */
+    static final int CHECKOUT_THREADS = 8;
+
     /** A commit that saves a screenshot of coherent files at a certain
      * time TIME alongside a given message LOG in a tree-like hierarchy
      * with other commits. Always use the factory constructor CREATE to create
@@ -28,18 +54,28 @@ public class Commit extends Saveable implements Serializable {
         this.timer = time;
         this.parent = currCommit();
         this.secondParent = "";
-        this.shaMap = (parent.equals("")) ? new HashMap<>() : copyHashMap();
+        Commit parentObj = parentObject();
+        this.tree = (parentObj == null) ? Tree.EMPTY : parentObj.tree;
     }
 
-    /** Return the copy of the hashmap from parent
-     *  by cloning it, or returning null if there is no parent. */
-    @SuppressWarnings("unchecked")
-    private HashMap<String, String> copyHashMap() {
-        Commit parentObj = parentObject();
-        if (parentObj == null || parentObj.shaMap == null) {
-            return null;
-        }
-        return (HashMap<String, String>) parentObj.shaMap.clone();
+    /** A commit with the message LOG, time TIME, parents PARENT and
+     * SECONDPARENT and files TREE. */
+    private Commit(String log, long time, String parent, String secondParent,
+                   Tree tree) {
+        this.msg = log;
+        this.timer = time;
+        this.parent = parent;
+        this.secondParent = secondParent;
+        this.tree = tree;
+    }
+
+    /** Read a commit serialized by an older version from IN, moving its
+     * files into a tree. */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tree = (shaMap == null) ? Tree.EMPTY : Tree.of(shaMap);
+        shaMap = null;
     }
 
     /** Return a commit object with the message MSG and timestamp TIMER
@@ -49,6 +85,7 @@ public class Commit extends Saveable implements Serializable {
             throws GitletException {
         Commit c = new Commit(msg, timer);
         c.updateFromStage();
+        c.seal();
         c.saveFile();
         c.updateHead();
         Stage.clearStage();
@@ -63,6 +100,7 @@ public class Commit extends Saveable implements Serializable {
         Commit c = new Commit(msg, timer);
         c.secondParent = sP;
         c.updateFromStage();
+        c.seal();
         c.saveFile();
         c.updateHead();
         Stage.clearStage();
@@ -79,12 +117,7 @@ public class Commit extends Saveable implements Serializable {
             return;
         }
         checkChanges(curr);
-        for (String key: curr.shaMap().keySet()) {
-            shaMap.put(key, curr.shaMap().get(key));
-        }
-        for (String key: curr.removeList().keySet()) {
-            shaMap.remove(key);
-        }
+        tree = tree.with(curr.shaMap(), curr.removeList().keySet());
     }
 
     /** Throw an exception if there are no changes
@@ -98,6 +131,125 @@ public class Commit extends Saveable implements Serializable {
         }
     }
 
+    /** Encode this commit, now complete, and name it by the SHA1 code of
+     * its encoding. */
+    private void seal() {
+        encoded = encode();
+        _SHA1 = Utils.sha1(encoded);
+    }
+
+    /** Return the canonical encoding of this commit: MAGIC, the parents,
+     * the time and the message, then the number of files and the name
+     * and blob code of each, in order of name. A string is written as
+     * its length and its UTF-8 bytes. */
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            writeString(out, parent);
+            writeString(out, secondParent);
+            out.writeLong(timer);
+            writeString(out, msg);
+            out.writeInt(tree.size());
+            for (int i = 0; i < tree.size(); i += 1) {
+                writeString(out, tree.name(i));
+                writeString(out, tree.code(i));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the commit named ID whose canonical encoding is BYTES. */
+    static Commit decode(String id, byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+            in.skipNBytes(MAGIC.length);
+            String first = readString(in);
+            String second = readString(in);
+            long time = in.readLong();
+            String log = readString(in);
+            int count = in.readInt();
+            String[] names = new String[count];
+            String[] codes = new String[count];
+            for (int i = 0; i < count; i += 1) {
+                names[i] = readString(in);
+                codes[i] = readString(in);
+            }
+            Commit c = new Commit(log, time, first, second,
+                    Tree.of(names, codes));
+            c._SHA1 = id;
+            return c;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit %s.", id);
+        }
+    }
+
+    /** Write S to OUT as its length and its UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return a string read from IN as writeString writes it. */
+    private static String readString(DataInputStream in)
+            throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the commit named ID saved in the file FILE, in the
+     * canonical encoding or serialized. */
+    static Commit read(File file, String id) {
+        if (!isRaw(file)) {
+            return Utils.readObject(file, Commit.class);
+        }
+        long start = Metrics.start();
+        byte[] bytes = Utils.readContents(file);
+        Commit c = decode(id, bytes);
+        Metrics.record(Metrics.Op.READ_OBJECT, start, bytes.length);
+        return c;
+    }
+
+    /** Returns true if the object file FILE holds a commit in the
+     * canonical encoding. */
+    static boolean isRaw(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Save this commit, in the canonical encoding, to the file named
+     * CODE in the objects directory, unless that already exists. */
+    @Override
+    public void saveCode(String code) {
+        assert Repo.objects().exists();
+        Events.ObjectWrite e = new Events.ObjectWrite();
+        e.begin();
+        e.id = code;
+        e.type = "commit";
+        File obj = Utils.join(Repo.objects(), code + ".txt");
+        if (!obj.exists()) {
+            long start = Metrics.start();
+            byte[] bytes = (encoded != null) ? encoded : encode();
+            try {
+                writeObjectFile(obj, bytes);
+            } catch (IOException excp) {
+                throw Utils.error("Could not save commit %s.", code);
+            }
+            Metrics.record(Metrics.Op.WRITE_OBJECT, start, bytes.length);
+            e.size = bytes.length;
+        }
+        encoded = null;
+        e.commit();
+    }
+
     /** Update the head of the currently active branch to the SHA1 value
      * of this commit.
      */
@@ -110,50 +262,48 @@ public class Commit extends Saveable implements Serializable {
      * assuming that the file exists in this commit.
      */
     public void checkout(String filename) {
-        String scode = shaMap.get(filename);
-        File corr = Utils.join(Repo.OBJECTS, scode + ".txt");
-        Blob b = Utils.readObject(corr, Blob.class);
-        File write = Utils.join("", filename);
-        if (!write.exists()) {
-            Repo.createFile(write);
-        }
-        Utils.writeContents(write, b.contents());
+        Blob.writeTo(tree.code(filename), Repo.working(filename));
     }
 
     /** Checkout all the files in the given commit. */
     public void checkout() {
-        for (String filename: shaMap.keySet()) {
-            checkout(filename);
+        for (int i = 0; i < tree.size(); i += 1) {
+            Blob.writeTo(tree.code(i), Repo.working(tree.name(i)));
         }
     }
 
-    /** Go through all the primary parents from current commit,
-     * displaying each commit as needed.
+    /** Return the commits reached through the primary parents from the
+     * current commit, newest first.
      */
-    public static void log() {
-        Stack<Commit> s = new Stack<>();
-        s.push(Commit.currCommitObj());
-        while (!s.isEmpty()) {
-            Commit curr = s.pop();
-            curr.display();
-            if (!curr.parent.equals("")) {
-                s.push(curr.parentObject());
-            }
+    public static List<Commit> log() {
+        List<Commit> result = new ArrayList<>();
+        for (Commit c = currCommitObj(); c != null; c = c.parentObject()) {
+            result.add(c);
         }
+        return result;
     }
 
-    /** Go through all the primary and second parents
-     * from current commit, displaying each commit as needed.
+    /** Return every commit in the objects directory, in the order of
+     * their files.
      */
-    public static void globalLog() {
-        List<String> objects = Utils.plainFilenamesIn(Repo.OBJECTS);
+    public static List<Commit> globalLog() {
+        List<Commit> result = new ArrayList<>();
+        List<String> objects = Utils.plainFilenamesIn(Repo.objects());
         for (String filename: objects) {
-            File loc = Utils.join(Repo.OBJECTS, filename);
+            File loc = Utils.join(Repo.objects(), filename);
+            if (isRaw(loc)) {
+                result.add(read(loc, filename.substring(0,
+                        filename.length() - ".txt".length())));
+                continue;
+            } else if (Blob.isRaw(loc)) {
+                continue;
+            }
             Saveable obj = Utils.readObject(loc, Saveable.class);
             if (obj instanceof Commit) {
-                ((Commit) obj).display();
+                result.add((Commit) obj);
             }
         }
+        return result;
     }
 
     /** Return a display string for all the files untracked in the working
@@ -163,7 +313,7 @@ public class Commit extends Saveable implements Serializable {
         String untracked = "";
         Commit currCommit = currCommitObj();
         Stage currStage = Stage.savedStage();
-        List<String> workingfiles = Utils.plainFilenamesIn(".");
+        List<String> workingfiles = Utils.plainFilenamesIn(Repo.root());
         for (String filename: workingfiles) {
             if (!Repo.neverConsider(filename)) {
                 if (!currCommit.containsFile(filename)) {
@@ -181,89 +331,119 @@ public class Commit extends Saveable implements Serializable {
      * in comparison to the current object.
      */
     public static String modified() {
-        String mod = "";
+        StringBuilder mod = new StringBuilder();
         Commit curr = currCommitObj();
         Stage currStage = Stage.savedStage();
-        List<String> workingfiles = Utils.plainFilenamesIn(".");
-        for (String filename: curr.shaMap.keySet()) {
-            if (!workingfiles.contains(filename)) {
-                if (currStage == null
-                        || !currStage.contains(filename)) {
-                    mod += filename + " (deleted)\n";
-                }
+        HashSet<String> workingfiles =
+                new HashSet<>(Utils.plainFilenamesIn(Repo.root()));
+        for (int i = 0; i < curr.tree.size(); i += 1) {
+            String filename = curr.tree.name(i);
+            if (!Sparse.includes(filename)
+                    || currStage != null && currStage.contains(filename)) {
+                continue;
+            } else if (!workingfiles.contains(filename)) {
+                mod.append(filename).append(" (deleted)\n");
             } else {
-                Blob b = Blob.checker(filename);
-                if (!b.shaCode().equals(curr.shaMap.get(filename))) {
-                    if (currStage == null
-                        || !currStage.contains(filename)) {
-                        mod += filename + " (modified)\n";
-                    }
+                String code = (currStage == null)
+                        ? Blob.checker(filename).shaCode()
+                        : currStage.workingCode(filename);
+                if (!curr.tree.hasCode(i, code)) {
+                    mod.append(filename).append(" (modified)\n");
                 }
             }
         }
-        return mod;
+        return mod.toString();
     }
 
-    /** Returns the common ancestor to two branches CURRENT and GIVEN. */
-    public static Commit findCommonAncestor(String current, String given)
-            throws GitletException {
-        String mergeToID = Branch.getBranchCode(current);
-        String mergeFromID = Branch.getBranchCode(given);
-        return helper(given, mergeToID, mergeFromID);
+    /** Returns the latest common ancestor of the heads of the two
+     * branches CURRENT and GIVEN, or null if they share no history. */
+    public static Commit findCommonAncestor(String current, String given) {
+        String id = mergeBase(Branch.getBranchCode(current),
+                Branch.getBranchCode(given));
+        return getCommit(id);
     }
 
-    /** Returns the common ancestor to commit IDs CURRENT and GIVEN,
-     * checking out branch BRANCH when necessary.
-     */
-    public static Commit helper(String branch, String current, String given)
-            throws GitletException {
-        String currentMemory = current, givenMemory = given;
-        ArrayList<String> currentHistory = new ArrayList<>();
-        currentHistory.add(current);
-        ArrayList<String> givenHistory = new ArrayList<>();
-        givenHistory.add(given);
-
-        while (!current.equals("")) {
-            String currParent = getCommit(current).parent;
-            String currSecond = getCommit(current).secondParent;
-            if (!currParent.equals("")) {
-                currentHistory.add(currParent);
-            }
-            if (!currSecond.equals("")) {
-                currentHistory.add(currSecond);
+    /** Returns the SHA1 code of the latest common ancestor of the commits
+     * with codes CURRENT and GIVEN, or "" if there is none. The ancestor
+     * closest to CURRENT is chosen. */
+    public static String mergeBase(String current, String given) {
+        HashSet<String> givenHistory = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(given);
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (givenHistory.add(id)) {
+                queue.addAll(getCommit(id).getParents());
             }
-            current = currParent;
         }
-
-        while (!given.equals("")) {
-            String givenParent = getCommit(given).parent;
-            String givenSecond = getCommit(given).secondParent;
-            if (!givenSecond.equals("")) {
-                givenHistory.add(givenSecond);
+        HashSet<String> seen = new HashSet<>();
+        queue.add(current);
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (givenHistory.contains(id)) {
+                return id;
             }
-            if (!givenParent.equals("")) {
-                givenHistory.add(givenParent);
+            if (seen.add(id)) {
+                queue.addAll(getCommit(id).getParents());
             }
-            given = givenParent;
-        }
-
-        current = currentMemory; given = givenMemory;
-        for (String commit: currentHistory) {
-            if (givenHistory.contains(commit)) {
-                if (commit.equals(given)) {
-                    throw Utils.error(
-                            "Given branch is an ancestor of the "
-                                    + "current branch.");
-                } else if (commit.equals(current)) {
-                    Branch.checkout(branch);
-                    throw Utils.error(
-                            "Current branch fast-forwarded.");
-                } else {
-                    return getCommit(commit);
-                }
+        }
+        return "";
+    }
+
+    /** Update the working directory from commit FROM to commit TO,
+     * writing the files whose contents differ between the two and
+     * deleting the files that TO does not track. A file the same in
+     * both is only written if its working copy is missing or no longer
+     * matches TO, which the index usually tells from its time and size
+     * without reading it. Files that the sparse-checkout patterns leave
+     * out are not touched. */
+    public static void checkoutChanges(Commit from, Commit to) {
+        List<String> write = new ArrayList<>();
+        List<String> delete = new ArrayList<>();
+        TreeDiff diff = new TreeDiff(from, to);
+        for (TreeDiff.Entry e : diff.entries()) {
+            String name = e.name();
+            if (!Sparse.includes(name)) {
+                continue;
+            } else if (e.kind() != TreeDiff.Kind.REMOVED) {
+                write.add(name);
+            } else if (!Repo.neverConsider(name)) {
+                delete.add(name);
             }
         }
-        return null;
+        Stage stage = Stage.savedStage();
+        for (int i = 0; i < to.tree.size(); i += 1) {
+            String name = to.tree.name(i);
+            if (diff.changed(name) || !Sparse.includes(name)) {
+                continue;
+            } else if (!Repo.working(name).isFile()
+                    || !to.tree.hasCode(i, stage.workingCode(name))) {
+                write.add(name);
+            }
+        }
+        stage.save();
+        writeFiles(to, write, delete);
+    }
+
+    /** Write the files named in WRITE, as commit TO has them, to the
+     * working directory and delete the files named in DELETE, using at
+     * most CHECKOUT_THREADS threads. */
+    static void writeFiles(Commit to, List<String> write,
+                           List<String> delete) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (String name : write) {
+            tasks.add(() -> {
+                to.checkout(name);
+                return null;
+            });
+        }
+        for (String name : delete) {
+            tasks.add(() -> {
+                Utils.restrictedDelete(Repo.working(name));
+                return null;
+            });
+        }
+        Utils.runAll(tasks, CHECKOUT_THREADS);
     }
 
     /** Return all the ancestors of the given commit. */
@@ -274,44 +454,13 @@ public class Commit extends Saveable implements Serializable {
         while (!tracker.isEmpty()) {
             Commit curr = tracker.pop();
             his.add(curr);
-            if (!curr.parent.equals("")) {
-                tracker.push(curr.parentObject());
-            }
-            if (!curr.secondParent.equals("")) {
-                tracker.push(curr.secondParentObject());
+            for (String id : curr.getParents()) {
+                tracker.push(getCommit(id));
             }
         }
         return his;
     }
 
-    /** Return a list of the files that have been changed or added from commit
-     * ANCESTOR to commit BRANCH. */
-    public static List<String> changedFiles(Commit branch, Commit ancestor) {
-        List<String> changed = new ArrayList<>();
-        for (String filename: branch.shaMap.keySet()) {
-            String ancestorCode = ancestor.shaMap.get(filename);
-            String currentCode = branch.shaMap.get(filename);
-            if (ancestorCode == null || !ancestorCode.equals(currentCode)) {
-                changed.add(filename);
-            }
-        }
-        return changed;
-    }
-
-    /** Return a list the files that were present in ANCESTOR but
-     * aren't in BRANCH. */
-    public static List<String> removedFiles(Commit branch, Commit ancestor) {
-        List<String> removed = new ArrayList<>();
-        for (String filename: ancestor.shaMap.keySet()) {
-            String currentCode = branch.shaMap.get(filename);
-            if (currentCode == null) {
-                removed.add(filename);
-            }
-        }
-        return removed;
-    }
-
-
     /** Display this commit according to given format. */
     public void display() {
         if (secondParent.equals("")) {
@@ -324,36 +473,17 @@ public class Commit extends Saveable implements Serializable {
         }
     }
 
-    /** Find and display the SHA1 Codes of all the commits with
+    /** Return the SHA1 Codes of all the commits with
      * log messages the same as LOG.
      */
-    public static void find(String log) {
-        boolean change = false;
-        List<String> objects = Utils.plainFilenamesIn(Repo.OBJECTS);
-        for (String filename: objects) {
-            File loc = Utils.join(Repo.OBJECTS, filename);
-            Saveable obj = Utils.readObject(loc, Saveable.class);
-            if (obj instanceof Commit) {
-                if (Commit.matchDisplay((Commit) obj, log)) {
-                    change = true;
-                }
+    public static List<String> find(String log) {
+        List<String> result = new ArrayList<>();
+        for (Commit c : globalLog()) {
+            if (c.msg.equals(log)) {
+                result.add(c._SHA1);
             }
         }
-        if (!change) {
-            throw Utils.error("Found no commit with that message");
-        }
-    }
-
-    /** Display the SHA code of commit CURR if the log message
-     * associated with it is equal to LOG.
-     * Return true if match, else return false.
-     */
-    private static boolean matchDisplay(Commit curr, String log) {
-        if (curr.msg.equals(log)) {
-            Utils.message("%s", curr._SHA1);
-            return true;
-        }
-        return false;
+        return result;
     }
 
     /** Return string representation of this commit's timer. */
@@ -368,41 +498,32 @@ public class Commit extends Saveable implements Serializable {
      * and null if it does not exist.
      */
     public String getBlobCode(String filename) {
-        if (shaMap.containsKey(filename)) {
-            return shaMap.get(filename);
-        } else {
-            return "";
-        }
+        String code = tree.code(filename);
+        return (code == null) ? "" : code;
     }
 
     /** Returns true if the given FILENAME exists in this
      * commit's mapping. */
     public boolean containsFile(String filename) {
-        return shaMap.containsKey(filename);
+        return tree.contains(filename);
     }
 
     /** Returns the object associated with the parent's SHA1 string.
      *  Returns null if parent does not exist. */
     public Commit parentObject() {
-        if (this.parent.equals("")) {
+        if (this.parent.equals("") || isShallow()) {
             return null;
         }
-        File parentFile = Utils.join(Repo.OBJECTS,
-                this.parent + ".txt");
-        return Utils.readObject(parentFile,
-                Commit.class);
+        return getCommit(this.parent);
     }
 
     /** Returns the object associated with the second parent's SHA1 string.
      *  Returns null if second parent does not exist. */
     public Commit secondParentObject() {
-        if (this.secondParent.equals("")) {
+        if (this.secondParent.equals("") || isShallow()) {
             return null;
         }
-        File parentFile = Utils.join(Repo.OBJECTS,
-                this.secondParent + ".txt");
-        return Utils.readObject(parentFile,
-                Commit.class);
+        return getCommit(this.secondParent);
     }
 
     /** Return the most recent commit sha code string from
@@ -423,31 +544,40 @@ public class Commit extends Saveable implements Serializable {
      * REMOTEREPO. */
     public static Commit remoteGetCommit(String id, String remoteRepo) {
         File f = Utils.join(remoteRepo, "objects", id + ".txt");
-        return Utils.readObject(f, Commit.class);
+        return read(f, id);
     }
 
-    /** Return the commit object associated with the given string ID. */
+    /** Return the commit object associated with the given string ID.
+     * Commits never change once saved, so the current repository keeps
+     * those it has read, up to Repository.COMMITS of them; callers must
+     * not modify the returned object. */
     public static Commit getCommit(String id) {
         if (id.equals("")) {
             return null;
-        } else {
-            File loc = Utils.join(Repo.OBJECTS, id + ".txt");
-            return Utils.readObject(loc, Commit.class);
         }
+        Events.ObjectRead e = new Events.ObjectRead();
+        e.begin();
+        Repository repo = Repository.current();
+        Commit c = repo.loaded(id);
+        File loc = null;
+        if (c == null) {
+            loc = Utils.join(Repo.objects(), id + ".txt");
+            c = read(loc, id);
+            repo.remember(id, c);
+        }
+        if (e.shouldCommit()) {
+            e.id = id;
+            e.type = "commit";
+            e.hit = loc == null;
+            e.size = (loc == null) ? 0 : loc.length();
+            e.commit();
+        }
+        return c;
     }
 
     /** Reset to the given commit id ID. */
     public static void reset(String id) {
-        Commit commit = getCommit(id);
-        Commit obj = currCommitObj();
-        commit.checkout();
-        for (String filename: obj.shaMap.keySet()) {
-            if (!commit.containsFile(filename)) {
-                if (!Repo.neverConsider(filename)) {
-                    Utils.restrictedDelete(filename);
-                }
-            }
-        }
+        checkoutChanges(currCommitObj(), getCommit(id));
     }
 
     /** Handles the opportunity to return the corresponding full
@@ -457,7 +587,7 @@ public class Commit extends Saveable implements Serializable {
         if (length == Utils.UID_LENGTH) {
             return commit;
         }
-        List<String> objs = Utils.plainFilenamesIn(".gitlet/objects");
+        List<String> objs = Utils.plainFilenamesIn(Repo.objects());
         for (String id: objs) {
             id = id.substring(0, id.length() - 4);
             String shortid = id.substring(0, length);
@@ -475,7 +605,7 @@ public class Commit extends Saveable implements Serializable {
         if (id.equals("")) {
             throw Utils.error("No commit with that id exists.");
         } else {
-            File loc = Utils.join(Repo.OBJECTS, id + ".txt");
+            File loc = Utils.join(Repo.objects(), id + ".txt");
             if (!loc.exists()) {
                 throw Utils.error("No commit with that id exists.");
             }
@@ -492,13 +622,14 @@ public class Commit extends Saveable implements Serializable {
         Commit commit = getCommit(id);
         Commit currCommit = currCommitObj();
         Stage currStage = Stage.savedStage();
-        List<String> workingfiles = Utils.plainFilenamesIn(".");
+        List<String> workingfiles = Utils.plainFilenamesIn(Repo.root());
         for (String filename: workingfiles) {
             if (!Repo.neverConsider(filename)) {
                 if (!currCommit.containsFile(filename)) {
                     if (currStage == null
                             || !currStage.containsFile(filename)) {
-                        if (commit.containsFile(filename)) {
+                        if (commit.containsFile(filename)
+                                && Sparse.includes(filename)) {
                             throw Utils.error(
                                     "There is an untracked file in the way; "
                                             + "delete it, "
@@ -510,6 +641,137 @@ public class Commit extends Saveable implements Serializable {
         }
     }
 
+    /** Return the SHA1 codes of this commit's parents, first parent
+     * first. The initial commit has none, and neither do the commits at
+     * which a shallow fetch stopped. */
+    public List<String> getParents() {
+        if (isShallow()) {
+            return new ArrayList<>();
+        }
+        return parentCodes();
+    }
+
+    /** Return the SHA1 codes of the parents this commit records, first
+     * parent first, whether or not this repository has them. */
+    List<String> parentCodes() {
+        List<String> parents = new ArrayList<>();
+        if (!parent.equals("")) {
+            parents.add(parent);
+        }
+        if (!secondParent.equals("")) {
+            parents.add(secondParent);
+        }
+        return parents;
+    }
+
+    /** Returns true if this commit's parents were left out of this
+     * repository by a shallow fetch. */
+    public boolean isShallow() {
+        return shallowCommits().contains(_SHA1);
+    }
+
+    /** Return the SHA1 codes of the commits at which shallow fetches
+     * stopped, read again whenever the shallow file changes. */
+    static Set<String> shallowCommits() {
+        return Repository.current().cached("shallow", Repo.shallow(),
+                () -> Collections.unmodifiableSet(
+                        readShallow(Repo.shallow())));
+    }
+
+    /** Return the SHA1 codes of the shallow commits listed in FILE, the
+     * shallow file of some repository, which may not exist. */
+    static Set<String> readShallow(File file) {
+        Set<String> shallow = new HashSet<>();
+        if (file.exists()) {
+            for (String id : Utils.readContentsAsString(file).split("\n")) {
+                if (!id.isEmpty()) {
+                    shallow.add(id);
+                }
+            }
+        }
+        return shallow;
+    }
+
+    /** Record the commits IDS as ones whose parents are missing. */
+    public static void addShallow(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Set<String> all = new HashSet<>(shallowCommits());
+        all.addAll(ids);
+        saveShallow(all);
+    }
+
+    /** Stop treating as shallow the commits whose parents have all been
+     * fetched since. A commit listed by a fetch that was interrupted
+     * before it arrived stays listed. */
+    static void trimShallow() {
+        Set<String> all = new HashSet<>(shallowCommits());
+        boolean trimmed = all.removeIf(id -> {
+            if (!Utils.join(Repo.objects(), id + ".txt").exists()) {
+                return false;
+            }
+            for (String p : getCommit(id).parentCodes()) {
+                if (!Utils.join(Repo.objects(), p + ".txt").exists()) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        if (trimmed) {
+            saveShallow(all);
+        }
+    }
+
+    /** Write the shallow commits ALL to the shallow file, deleting it if
+     * there are none. */
+    private static void saveShallow(Set<String> all) {
+        if (all.isEmpty()) {
+            Repo.shallow().delete();
+        } else {
+            Utils.writeContents(Repo.shallow(),
+                    String.join("\n", new TreeSet<>(all)) + "\n");
+        }
+        Repository.current().forget("shallow");
+    }
+
+    /** Replace each shallow commit that is a key of IDS with the commit
+     * that it maps to. */
+    static void translateShallow(Map<String, String> ids) {
+        Set<String> all = shallowCommits();
+        if (all.isEmpty()) {
+            return;
+        }
+        Set<String> moved = new TreeSet<>();
+        for (String id : all) {
+            moved.add(ids.getOrDefault(id, id));
+        }
+        saveShallow(moved);
+    }
+
+    /** Return this commit, in the canonical encoding, with each blob
+     * code and parent code that is a key of BLOBS or of COMMITS replaced
+     * by what it maps to. If that changes its code, the result is a new
+     * commit, which is saved; otherwise it is this one. */
+    Commit translate(Map<String, String> blobs,
+                     Map<String, String> commits) {
+        HashMap<String, String> map = new HashMap<>();
+        for (int i = 0; i < tree.size(); i += 1) {
+            String code = tree.code(i);
+            map.put(tree.name(i), blobs.getOrDefault(code, code));
+        }
+        Commit c = new Commit(msg, timer,
+                commits.getOrDefault(parent, parent),
+                commits.getOrDefault(secondParent, secondParent),
+                Tree.of(map));
+        c.seal();
+        if (c._SHA1.equals(_SHA1)) {
+            return this;
+        }
+        c.saveFile();
+        return c;
+    }
+
     /** Return the Unix EPOCH time of commit creation. */
     public long getTime() {
         return timer;
@@ -518,18 +780,28 @@ public class Commit extends Saveable implements Serializable {
 
     /** Return the set of all files associated with this commit. */
     public Set<String> getFileSet() {
-        return shaMap.keySet();
+        return tree.asMap().keySet();
+    }
+
+    /** Return the mapping from file name to blob SHA1 code of this
+     * commit, which may not be modified. */
+    public Map<String, String> files() {
+        return tree.asMap();
+    }
+
+    /** Return the files of this commit. */
+    Tree tree() {
+        return tree;
     }
 
     /** Return the code associated with ID in this commit. */
     public String fileCode(String id) {
-        return shaMap.get(id);
+        return tree.code(id);
     }
 
-    /** Returns the SHA1 code of the this commit. */
+    /** Returns the SHA1 code of the this commit, which is that of its
+     * canonical encoding unless an older version saved it. */
     public String shaCode() {
-        _SHA1 = Utils.sha1(msg, Long.toString(timer),
-                parent, secondParent, Utils.serialize(shaMap));
         return _SHA1;
     }
 
@@ -538,6 +810,10 @@ public class Commit extends Saveable implements Serializable {
         return _SHA1;
     }
 
+    /** The serialVersionUID older versions computed for this class,
+     * so that the commits they serialized can still be read. */
+    private static final long serialVersionUID = -5851769469976007136L;
+
     /** The log message associated with this commit. */
     private String msg;
 
@@ -552,9 +828,13 @@ public class Commit extends Saveable implements Serializable {
      * commit's second parent, if any. Results from merging. */
     private String secondParent;
 
-    /** A mapping from file name to its SHA1 blob object string. */
+    /** The files of a commit serialized by an older version, as read;
+     * they are moved into TREE at once. */
     private HashMap<String, String> shaMap;
 
+    /** The files of this commit. */
+    private transient Tree tree;
+
     /** Formatted representation of the non-merged commit. */
     private static final String FORM =
             "===\ncommit %s\nDate: %s\n%s\n";
@@ -565,4 +845,8 @@ public class Commit extends Saveable implements Serializable {
 
     /** Storing the SHA String Code of the Commit. */
     private String _SHA1;
+
+    /** The canonical encoding of this commit, kept from when it is
+     * complete until it is saved. */
+    private transient byte[] encoded;
 }
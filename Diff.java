@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Computes the differences between two sequences of line numbers
+ * with Myers' algorithm, in its linear space form: the middle snake of
+ * an optimal edit path is found from both ends at once and the two
+ * halves on either side of it are solved in turn. Time is proportional
+ * to the size of the input times the number of differences.
+ * @author AMK Somani
+ */
+class Diff {
+
+    /** A diff of the sequences A and B. */
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        int size = 2 * (a.length + b.length) + 3;
+        forward = new int[size];
+        backward = new int[size];
+        deleted = new boolean[a.length];
+        inserted = new boolean[b.length];
+    }
+
+    /** Return the regions in which the sequences A and B differ, in
+     * order. Between two hunks there is always at least one line that
+     * is the same in both. */
+    static List<Hunk> hunks(int[] a, int[] b) {
+        Diff d = new Diff(a, b);
+        d.compare(0, a.length, 0, b.length);
+        List<Hunk> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length
+                    && !d.deleted[i] && !d.inserted[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < a.length && d.deleted[i]) {
+                i += 1;
+            }
+            while (j < b.length && d.inserted[j]) {
+                j += 1;
+            }
+            result.add(new Hunk(i0, i, j0, j));
+        }
+        return result;
+    }
+
+    /** Mark the lines of A from ALO to AHI and of B from BLO to BHI that
+     * are not part of a longest common subsequence of the two. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j += 1) {
+                inserted[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i += 1) {
+                deleted[i] = true;
+            }
+        } else {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, snake[0], bLo, snake[1]);
+            compare(snake[2], aHi, snake[3], bHi);
+        }
+    }
+
+    /** Return the start and end points {X0, Y0, X1, Y1} of the middle
+     * snake of an optimal path from (ALO, BLO) to (AHI, BHI). */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int off = n + m + 1;
+        forward[off + 1] = 0;
+        backward[off + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d
+                        && forward[off + k - 1] < forward[off + k + 1])) {
+                    x = forward[off + k + 1];
+                } else {
+                    x = forward[off + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[off + k] = x;
+                int r = delta - k;
+                if (odd && r >= -(d - 1) && r <= d - 1
+                        && x + backward[off + r] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d
+                        && backward[off + k - 1] < backward[off + k + 1])) {
+                    x = backward[off + k + 1];
+                } else {
+                    x = backward[off + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m
+                        && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[off + k] = x;
+                int f = delta - k;
+                if (!odd && f >= -d && f <= d
+                        && x + forward[off + f] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** A region where lines AStart to AEnd of the first sequence were
+     * replaced by lines BStart to BEnd of the second. Either may be
+     * empty. */
+    static final class Hunk {
+
+        /** A hunk replacing A lines ASTART..AEND by B lines BSTART..BEND,
+         * end points excluded. */
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        /** First line of the first sequence in this hunk. */
+        final int aStart;
+
+        /** Line of the first sequence just after this hunk. */
+        final int aEnd;
+
+        /** First line of the second sequence in this hunk. */
+        final int bStart;
+
+        /** Line of the second sequence just after this hunk. */
+        final int bEnd;
+    }
+
+    /** The two sequences being compared. */
+    private final int[] a, b;
+
+    /** Furthest reaching points of the forward and backward searches,
+     * indexed by diagonal. */
+    private final int[] forward, backward;
+
+    /** Which lines of A and B are not in the common subsequence. */
+    private final boolean[] deleted, inserted;
+}
@@ -0,0 +1,165 @@
+package gitlet;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** The Java Flight Recorder events gitlet emits for work on its object
+ * store and working tree. Every event is off unless a recording turns
+ * it on, as the settings in gitlet.jfc do:
+ *
+ *     java -XX:StartFlightRecording:settings=default,settings=gitlet.jfc,
+ *          filename=g.jfr gitlet.Main ...
+ *
+ * An event that is off costs one check of a flag.
+ * @author AMK Somani
+ */
+class Events {
+
+    /** Reading a commit or blob, or finding it already read. */
+    @Name("gitlet.ObjectRead")
+    @Label("Object Read")
+    @Category({"Gitlet", "Object Store"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ObjectRead extends Event {
+        /** SHA1 code of the object. */
+        @Label("Id")
+        String id;
+
+        /** "commit" or "blob". */
+        @Label("Type")
+        String type;
+
+        /** Length of the object file, or 0 if it was not read. */
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        /** True if the object was found already read. */
+        @Label("Hit")
+        @Description("Found in memory rather than read from disk")
+        boolean hit;
+    }
+
+    /** Writing a commit or blob to the objects directory. */
+    @Name("gitlet.ObjectWrite")
+    @Label("Object Write")
+    @Category({"Gitlet", "Object Store"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ObjectWrite extends Event {
+        /** SHA1 code of the object. */
+        @Label("Id")
+        String id;
+
+        /** "commit" or "blob". */
+        @Label("Type")
+        String type;
+
+        /** Bytes written, or 0 if the object was already there. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** Hashing the contents of a file as a blob. */
+    @Name("gitlet.BlobHash")
+    @Label("Blob Hash")
+    @Category({"Gitlet", "Working Tree"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BlobHash extends Event {
+        /** Name of the file. */
+        @Label("Path")
+        String path;
+
+        /** Bytes hashed. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** Reading or writing the index. */
+    @Name("gitlet.Index")
+    @Label("Index Load or Save")
+    @Category({"Gitlet", "Working Tree"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class IndexIO extends Event {
+        /** "load" or "save". */
+        @Label("Operation")
+        String operation;
+
+        /** Length of the index file afterwards. */
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        /** True if the whole file was written rather than appended to. */
+        @Label("Rewrite")
+        boolean rewrite;
+    }
+
+    /** Moving a branch or the head. */
+    @Name("gitlet.RefUpdate")
+    @Label("Ref Update")
+    @Category({"Gitlet", "Refs"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class RefUpdate extends Event {
+        /** Name of the branch, or "HEAD". */
+        @Label("Ref")
+        String ref;
+
+        /** What the ref now holds. */
+        @Label("Value")
+        String value;
+    }
+
+    /** One phase of a merge. */
+    @Name("gitlet.MergePhase")
+    @Label("Merge Phase")
+    @Category({"Gitlet", "Merge"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class MergePhase extends Event {
+        /** The branch merged into. */
+        @Label("Current")
+        String current;
+
+        /** The branch merged. */
+        @Label("Given")
+        String given;
+
+        /** "ancestor", "diff", "renames", "apply" or "commit". */
+        @Label("Phase")
+        String phase;
+    }
+
+    /** Return a merge phase named PHASE of the merge of GIVEN into
+     * CURRENT, begun. */
+    static MergePhase mergePhase(String current, String given,
+                                 String phase) {
+        MergePhase e = new MergePhase();
+        e.current = current;
+        e.given = given;
+        e.phase = phase;
+        e.begin();
+        return e;
+    }
+
+    /** Record a ref update that set REF to VALUE, begun at E. */
+    static void refUpdated(RefUpdate e, String ref, String value) {
+        if (e.shouldCommit()) {
+            e.ref = ref;
+            e.value = value;
+            e.commit();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A check of a repository's objects. Every object file is read and
+ * checked against its name in parallel: a blob or a commit in the
+ * canonical encoding is hashed again. A commit serialized by an older
+ * version must be read whole, with nothing after it, and name itself;
+ * it is not hashed again, since its code covered its map of files as
+ * Java serializes it, which depends on the map's history and not only
+ * its contents. Every object a commit, a branch
+ * or the stage refers to must exist, except the parents of commits at
+ * which a shallow fetch stopped. Objects nothing refers to are
+ * dangling, which is harmless; gc removes them.
+ * @author AMK Somani
+ */
+public class Fsck {
+
+    /** Number of threads reading objects. Reading is mostly waiting on
+     * the disk, so there are more of these than cores. */
+    static final int THREADS = 16;
+
+    /** Return the result of checking the current repository. */
+    static Fsck check() throws GitletException {
+        Fsck fsck = new Fsck();
+        fsck.scan();
+        fsck.connect();
+        return fsck;
+    }
+
+    /** A check yet to be run. */
+    private Fsck() {
+    }
+
+    /** Read and check every object file, in parallel. */
+    private void scan() {
+        List<String> names = Utils.plainFilenamesIn(Repo.objects());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int slice = Math.max(1, (names.size() + THREADS - 1) / THREADS);
+        for (int from = 0; from < names.size(); from += slice) {
+            List<String> part = names.subList(from,
+                    Math.min(names.size(), from + slice));
+            tasks.add(() -> {
+                for (String name : part) {
+                    scan(name.substring(0,
+                            name.length() - ".txt".length()));
+                }
+                return null;
+            });
+        }
+        Utils.runAll(tasks, THREADS);
+    }
+
+    /** Read and check the object ID. */
+    private void scan(String id) {
+        checked.increment();
+        Saveable obj = verified(Utils.join(Repo.objects(), id + ".txt"), id);
+        if (obj instanceof Blob) {
+            types.put(id, "blob");
+        } else if (obj instanceof Commit) {
+            checkCommit(id, (Commit) obj);
+        } else {
+            corrupt.add(id);
+        }
+    }
+
+    /** Return the object saved in the file FILE if it is the one named
+     * ID, or null if it is not or cannot be read. */
+    static Saveable verified(File file, String id) {
+        try {
+            if (Commit.isRaw(file)) {
+                byte[] bytes = Utils.readContents(file);
+                return Utils.sha1(bytes).equals(id)
+                        ? Commit.decode(id, bytes) : null;
+            }
+            Saveable obj = Blob.isRaw(file) ? Blob.read(file, id)
+                    : readExactly(file);
+            if (obj instanceof Blob) {
+                Blob b = (Blob) obj;
+                return (b.shaCode().equals(id) || b.hasNamedCode(id))
+                        ? b : null;
+            } else if (obj instanceof Commit) {
+                return ((Commit) obj).sha1().equals(id) ? obj : null;
+            }
+            return null;
+        } catch (RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** Return the object serialized in FILE, throwing an exception if
+     * it cannot be read or anything follows it. */
+    private static Saveable readExactly(File file) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(Utils.readContents(file)))) {
+            Saveable obj = (Saveable) in.readObject();
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("trailing bytes");
+            }
+            return obj;
+        } catch (IOException | ClassNotFoundException
+                 | ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Note what the sound commit C, named ID, refers to. */
+    private void checkCommit(String id, Commit c) {
+        types.put(id, "commit");
+        for (String parent : c.getParents()) {
+            referenced.putIfAbsent(parent, id);
+        }
+        for (String blob : c.files().values()) {
+            referenced.putIfAbsent(blob, id);
+        }
+    }
+
+    /** Find the objects referred to but missing, and those nothing
+     * refers to. */
+    private void connect() {
+        Map<String, String> roots = new TreeMap<>();
+        for (String head : Branch.allHeads()) {
+            roots.put(head, "a branch");
+        }
+        for (String blob : Stage.savedStage().shaMap().values()) {
+            roots.put(blob, "the stage");
+        }
+        for (Map.Entry<String, String> e : roots.entrySet()) {
+            if (!e.getKey().isEmpty()) {
+                referenced.putIfAbsent(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, String> e : referenced.entrySet()) {
+            if (!types.containsKey(e.getKey())
+                    && !corrupt.contains(e.getKey())) {
+                missing.put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, String> e : types.entrySet()) {
+            if (!referenced.containsKey(e.getKey())) {
+                dangling.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Returns true if no object is corrupt or missing. */
+    public boolean ok() {
+        return corrupt.isEmpty() && missing.isEmpty();
+    }
+
+    /** Return the number of objects checked. */
+    public long checked() {
+        return checked.sum();
+    }
+
+    /** Return the SHA1 codes of the objects that could not be read or
+     * did not match their names, in order. */
+    public Set<String> corrupt() {
+        return new TreeSet<>(corrupt);
+    }
+
+    /** Return the SHA1 codes of the objects referred to but absent,
+     * each mapped to the commit, or the description of the ref,
+     * that refers to it. */
+    public Map<String, String> missing() {
+        return missing;
+    }
+
+    /** Return the SHA1 codes of the objects nothing refers to, each
+     * mapped to its type. */
+    public Map<String, String> dangling() {
+        return dangling;
+    }
+
+    /** Objects checked so far. */
+    private final LongAdder checked = new LongAdder();
+
+    /** The type of each sound object, by SHA1 code. */
+    private final Map<String, String> types = new ConcurrentHashMap<>();
+
+    /** Corrupt objects. */
+    private final Set<String> corrupt = ConcurrentHashMap.newKeySet();
+
+    /** Each object referred to, mapped to one that refers to it. */
+    private final Map<String, String> referenced =
+            new ConcurrentHashMap<>();
+
+    /** Missing objects, mapped to what refers to them. */
+    private final Map<String, String> missing = new TreeMap<>();
+
+    /** Dangling objects, mapped to their types. */
+    private final Map<String, String> dangling = new TreeMap<>();
+}
@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A mark-and-sweep garbage collection of a repository's objects. Every
+ * object reachable from a branch head, a fetched remote branch or the
+ * index is marked, by workers that read commits in parallel and follow
+ * their parents as they go. Every object left unmarked is garbage: a
+ * blob added but never committed, or the commits of a removed branch.
+ * When pruning, garbage older than a grace period is deleted, so that
+ * objects written by a command that has not yet recorded them are
+ * kept.
+ * @author AMK Somani
+ */
+public class Gc {
+
+    /** Number of threads that mark and sweep. */
+    static final int THREADS = 8;
+
+    /** Default age in milliseconds garbage must reach to be pruned. */
+    static final long GRACE = TimeUnit.DAYS.toMillis(14);
+
+    /** Return the result of collecting the garbage of the current
+     * repository, deleting the garbage last changed more than GRACE
+     * milliseconds ago if PRUNE. Nothing is deleted if any reachable
+     * commit cannot be read. */
+    static Gc collect(boolean prune, long grace) throws GitletException {
+        Gc gc = new Gc();
+        gc.mark();
+        gc.sweep(prune, System.currentTimeMillis() - grace);
+        if (gc.pruned() > 0) {
+            Repository.current().forgetCommits();
+        }
+        return gc;
+    }
+
+    /** A collection yet to be run. */
+    private Gc() {
+    }
+
+    /** Mark every object reachable from the branches and the blobs
+     * staged for addition. */
+    private void mark() throws GitletException {
+        marked.addAll(Stage.savedStage().shaMap().values());
+        pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            pending.incrementAndGet();
+            for (String head : Branch.allHeads()) {
+                visit(head);
+            }
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+            done.await();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted.");
+        } finally {
+            pool.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw Utils.error("Cannot read commit %s; nothing was pruned.",
+                    failure.get());
+        }
+    }
+
+    /** Mark the commit ID, if not yet marked, and then its files and
+     * parents on a worker. */
+    private void visit(String id) {
+        if (id.isEmpty() || !marked.add(id)) {
+            return;
+        }
+        pending.incrementAndGet();
+        Callable<Void> task = Repository.bind(() -> {
+            try {
+                Commit c = Commit.getCommit(id);
+                marked.addAll(c.files().values());
+                for (String parent : c.getParents()) {
+                    visit(parent);
+                }
+            } catch (RuntimeException excp) {
+                failure.compareAndSet(null, id);
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    done.countDown();
+                }
+            }
+            return null;
+        });
+        pool.submit(task);
+    }
+
+    /** Count the unmarked objects, deleting those last changed before
+     * CUTOFF if PRUNE. */
+    private void sweep(boolean prune, long cutoff) {
+        List<String> names = Utils.plainFilenamesIn(Repo.objects());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int slice = Math.max(1, (names.size() + THREADS - 1) / THREADS);
+        for (int from = 0; from < names.size(); from += slice) {
+            List<String> part = names.subList(from,
+                    Math.min(names.size(), from + slice));
+            tasks.add(() -> {
+                for (String name : part) {
+                    sweep(name, prune, cutoff);
+                }
+                return null;
+            });
+        }
+        Utils.runAll(tasks, THREADS);
+    }
+
+    /** Count the object file NAME if it is garbage, deleting it if
+     * PRUNE and it was last changed before CUTOFF. */
+    private void sweep(String name, boolean prune, long cutoff) {
+        String id = name.substring(0, name.length() - ".txt".length());
+        if (marked.contains(id)) {
+            reachable.increment();
+            return;
+        }
+        unreachable.increment();
+        File f = Utils.join(Repo.objects(), name);
+        long length = f.length();
+        if (prune && f.lastModified() < cutoff && f.delete()) {
+            pruned.increment();
+            freed.add(length);
+        }
+    }
+
+    /** Return the number of objects found reachable. */
+    public long reachable() {
+        return reachable.sum();
+    }
+
+    /** Return the number of objects found unreachable. */
+    public long unreachable() {
+        return unreachable.sum();
+    }
+
+    /** Return the number of objects deleted. */
+    public long pruned() {
+        return pruned.sum();
+    }
+
+    /** Return the number of bytes freed. */
+    public long freed() {
+        return freed.sum();
+    }
+
+    /** SHA1 codes of the objects marked so far. */
+    private final Set<String> marked = ConcurrentHashMap.newKeySet();
+
+    /** Commits queued or being read, plus one while heads are queued. */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** Released when PENDING falls to 0. */
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /** The first commit that could not be read, if any. */
+    private final AtomicReference<String> failure = new AtomicReference<>();
+
+    /** The workers that read commits while marking. */
+    private ExecutorService pool;
+
+    /** Objects found reachable. */
+    private final LongAdder reachable = new LongAdder();
+
+    /** Objects found unreachable. */
+    private final LongAdder unreachable = new LongAdder();
+
+    /** Objects deleted. */
+    private final LongAdder pruned = new LongAdder();
+
+    /** Bytes freed. */
+    private final LongAdder freed = new LongAdder();
+}
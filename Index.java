@@ -0,0 +1,527 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/** The index file, read through a memory map. It holds one entry per
+ * file: its path, a blob SHA1 code, flags saying whether it is staged
+ * for addition or removal, and the modification time and size the
+ * file had when that code was computed. The layout is
+ *
+ *     header   MAGIC, CRC32, sorted count, heap length, tail count,
+ *              version and padding: HEADER bytes
+ *     sorted   fixed RECORD-byte entries in order of path
+ *     heap     the UTF-8 bytes of the sorted entries' paths
+ *     tail     entries appended since, each followed by its path
+ *
+ * A record is the offset and length of its path in the file, the
+ * 20-byte code, the flags, the time in nanoseconds and the size. The
+ * checksum covers everything after it. The file is mapped read-only,
+ * and changes are held in memory until a save writes them together
+ * with the checksum: entries already in the file are changed in place;
+ * new ones are appended to the tail, which is merged into the sorted
+ * part once it grows long.
+ * @author AMK Somani
+ */
+class Index {
+
+    /** First bytes of an index file. */
+    static final byte[] MAGIC = "GIX1".getBytes(StandardCharsets.UTF_8);
+
+    /** Format version. */
+    static final int VERSION = 1;
+
+    /** Length of the header. */
+    static final int HEADER = 32;
+
+    /** Length of one record. */
+    static final int RECORD = 48;
+
+    /** Flag for an entry staged for addition. */
+    static final int ADDED = 1;
+
+    /** Flag for an entry staged for removal. */
+    static final int REMOVED = 2;
+
+    /** Flag for an entry that no longer counts. */
+    static final int DELETED = 4;
+
+    /** Fewest tail entries that cause the tail to be merged. */
+    static final int MIN_TAIL = 256;
+
+    /** Return the index stored in FILE, which is empty if FILE is. */
+    static Index read(File file) throws GitletException {
+        return read(file, false);
+    }
+
+    /** Return the index stored in FILE, which is empty if FILE is. If
+     * SHARED, other processes may be reading FILE, so it is never
+     * changed in place: saving writes a new file that replaces it. */
+    static Index read(File file, boolean shared) throws GitletException {
+        Events.IndexIO e = new Events.IndexIO();
+        e.begin();
+        Index index = new Index(file, shared);
+        index.load();
+        if (e.shouldCommit()) {
+            e.operation = "load";
+            e.size = index.end;
+            e.commit();
+        }
+        return index;
+    }
+
+    /** An index to be read from FILE, shared with others if SHARED. */
+    private Index(File file, boolean shared) {
+        this.file = file;
+        this.shared = shared;
+    }
+
+    /** Map the file and check its header and checksum. A stage that
+     * an older version serialized to the file is taken as pending
+     * entries, so that the next save writes them in this format. */
+    private void load() throws GitletException {
+        if (!file.exists() || file.length() == 0) {
+            empty();
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw Utils.error("Could not read the index.");
+        }
+        end = buf.capacity();
+        if (end >= 2 && buf.getShort(0)
+                == ObjectStreamConstants.STREAM_MAGIC) {
+            empty();
+            loadStage();
+            return;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buf.get(0, magic);
+        if (end < HEADER || !Arrays.equals(magic, MAGIC)
+                || buf.getInt(20) != VERSION || buf.getInt(4) != crc()) {
+            throw Utils.error("The index is corrupt.");
+        }
+        sorted = buf.getInt(8);
+        heap = buf.getInt(12);
+        tailCount = buf.getInt(16);
+        int pos = HEADER + sorted * RECORD + heap;
+        for (int i = 0; i < tailCount; i += 1) {
+            tail.put(path(pos), pos);
+            pos += RECORD + buf.getInt(pos + 4);
+        }
+    }
+
+    /** Make this index empty and not mapped. */
+    private void empty() {
+        buf = ByteBuffer.allocate(HEADER);
+        buf.put(MAGIC);
+        end = HEADER;
+        sorted = 0;
+        heap = 0;
+        tailCount = 0;
+    }
+
+    /** Take the files staged in the stage serialized to the file as
+     * pending entries, with unknown times and sizes. */
+    private void loadStage() throws GitletException {
+        Stage old;
+        try {
+            old = Utils.readObject(file, Stage.class);
+        } catch (IllegalArgumentException excp) {
+            throw Utils.error("The index is corrupt.");
+        }
+        for (Map.Entry<String, String> e : old.shaMap().entrySet()) {
+            pending.put(e.getKey(),
+                    new Entry(e.getKey(), e.getValue(), ADDED, 0, -1));
+        }
+        for (String path : old.removeList().keySet()) {
+            pending.put(path, new Entry(path, "", REMOVED, 0, -1));
+        }
+    }
+
+    /** Return the checksum of everything after the checksum field. */
+    private int crc() {
+        CRC32 crc = new CRC32();
+        ByteBuffer b = buf.duplicate();
+        b.position(8);
+        b.limit(end);
+        crc.update(b);
+        return (int) crc.getValue();
+    }
+
+    /** Return the entry for PATH, or null if there is none. */
+    Entry get(String path) {
+        Entry e = pending.get(path);
+        if (e != null) {
+            return e;
+        }
+        int pos = find(path);
+        if (pos < 0 || (buf.getInt(pos + 28) & DELETED) != 0) {
+            return null;
+        }
+        return entry(pos);
+    }
+
+    /** Make the entry for PATH say that its code is ID, its flags are
+     * FLAGS and that it had time MTIME and size SIZE, a SIZE of -1 meaning
+     * that these are unknown. The file is only changed by SAVE. */
+    void put(String path, String id, int flags, long mtime, long size) {
+        pending.put(path, new Entry(path, id, flags, mtime, size));
+    }
+
+    /** Change the flags of the entry for PATH to FLAGS, if there is one.
+     * If FORGET, also forget the time and size. */
+    void setFlags(String path, int flags, boolean forget) {
+        Entry e = get(path);
+        if (e != null) {
+            put(path, e.id(), flags, e.mtime(), forget ? -1 : e.size());
+        }
+    }
+
+    /** Return every entry with any of the flags FLAGS, in no particular
+     * order. */
+    List<Entry> flagged(int flags) {
+        List<Entry> result = new ArrayList<>();
+        for (int pos : positions()) {
+            int f = buf.getInt(pos + 28);
+            if ((f & DELETED) == 0 && (f & flags) != 0) {
+                result.add(entry(pos));
+            }
+        }
+        for (Entry e : pending.values()) {
+            if ((e.flags() & flags) != 0) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /** Return every entry, whatever its flags, in no particular order. */
+    List<Entry> entries() {
+        Map<String, Entry> result = new HashMap<>();
+        for (int pos : positions()) {
+            if ((buf.getInt(pos + 28) & DELETED) == 0) {
+                Entry e = entry(pos);
+                result.put(e.path(), e);
+            }
+        }
+        result.putAll(pending);
+        return new ArrayList<>(result.values());
+    }
+
+    /** Write the changes made to this index back to its file, merging
+     * the tail into the sorted part if COMPACT or if it has grown long.
+     */
+    void save() throws GitletException {
+        if (!compact && pending.isEmpty()) {
+            return;
+        }
+        Events.IndexIO e = new Events.IndexIO();
+        e.begin();
+        boolean rewrite = compact || shared
+                || !(buf instanceof MappedByteBuffer)
+                || tailCount + pending.size()
+                        > Math.max(MIN_TAIL, sorted / 8);
+        if (rewrite) {
+            rewrite();
+        } else {
+            update();
+        }
+        compact = false;
+        if (e.shouldCommit()) {
+            e.operation = "save";
+            e.size = end;
+            e.rewrite = rewrite;
+            e.commit();
+        }
+    }
+
+    /** Ask for the next save to merge the tail and drop deleted
+     * entries. */
+    void compact() {
+        compact = true;
+    }
+
+    /** Write the pending entries to the file: over their records for
+     * those already in it, and appended to the tail for the rest. The
+     * tail count and checksum are written last. */
+    private void update() throws GitletException {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            List<Entry> added = new ArrayList<>();
+            int size = 0;
+            for (Entry e : pending.values()) {
+                int pos = find(e.path());
+                if (pos < 0) {
+                    added.add(e);
+                    size += RECORD + e.path()
+                            .getBytes(StandardCharsets.UTF_8).length;
+                } else {
+                    ByteBuffer fields = ByteBuffer.allocate(RECORD - 8);
+                    putFields(fields, e);
+                    fields.flip();
+                    ch.write(fields, pos + 8);
+                }
+            }
+            ByteBuffer out = ByteBuffer.allocate(size);
+            for (Entry e : added) {
+                byte[] name = e.path().getBytes(StandardCharsets.UTF_8);
+                int pos = end + out.position();
+                putRecord(out, pos + RECORD, name.length, e);
+                out.put(name);
+                tail.put(e.path(), pos);
+            }
+            out.flip();
+            ch.write(out, end);
+            end += size;
+            tailCount += added.size();
+            pending.clear();
+            ch.write(ByteBuffer.allocate(4).putInt(0, tailCount), 16);
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, end);
+            ch.write(ByteBuffer.allocate(4).putInt(0, crc()), 4);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the index.");
+        }
+    }
+
+    /** Write every live entry, sorted, to a new file that then replaces
+     * the index file, and map it. */
+    private void rewrite() throws GitletException {
+        TreeMap<String, Entry> all = new TreeMap<>();
+        for (int pos : positions()) {
+            if ((buf.getInt(pos + 28) & DELETED) == 0) {
+                Entry e = entry(pos);
+                all.put(e.path(), e);
+            }
+        }
+        all.putAll(pending);
+        List<byte[]> names = new ArrayList<>();
+        int heapSize = 0;
+        for (String path : all.keySet()) {
+            byte[] name = path.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            heapSize += name.length;
+        }
+        int records = HEADER + all.size() * RECORD;
+        ByteBuffer out = ByteBuffer.allocate(records + heapSize);
+        out.put(MAGIC);
+        out.putInt(0);
+        out.putInt(all.size());
+        out.putInt(heapSize);
+        out.putInt(0);
+        out.putInt(VERSION);
+        out.putLong(0);
+        int offset = records, i = 0;
+        for (Entry e : all.values()) {
+            putRecord(out, offset, names.get(i).length, e);
+            offset += names.get(i).length;
+            i += 1;
+        }
+        for (byte[] name : names) {
+            out.put(name);
+        }
+        buf = out;
+        end = out.capacity();
+        buf.putInt(4, crc());
+
+        try {
+            File tmp = File.createTempFile(file.getName(), ".tmp",
+                    file.getAbsoluteFile().getParentFile());
+            Files.write(tmp.toPath(), out.array());
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the index.");
+        }
+        pending.clear();
+        tail.clear();
+        load();
+    }
+
+    /** Write to OUT the record of entry E, whose path is LENGTH bytes
+     * at offset OFFSET in the file. */
+    private static void putRecord(ByteBuffer out, int offset, int length,
+                                  Entry e) {
+        out.putInt(offset);
+        out.putInt(length);
+        putFields(out, e);
+    }
+
+    /** Write to OUT the code, flags, time and size of entry E, the part
+     * of its record after the path's offset and length. */
+    private static void putFields(ByteBuffer out, Entry e) {
+        out.put(encode(e.id()));
+        out.putInt(e.flags());
+        out.putLong(e.mtime());
+        out.putLong(e.size());
+    }
+
+    /** Return the position of the record for PATH in the file, or -1. */
+    private int find(String path) {
+        Integer pos = tail.get(path);
+        if (pos != null) {
+            return pos;
+        }
+        int lo = 0, hi = sorted - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = path(HEADER + mid * RECORD).compareTo(path);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return HEADER + mid * RECORD;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the positions of every record in the file. */
+    private int[] positions() {
+        int[] result = new int[sorted + tail.size()];
+        for (int i = 0; i < sorted; i += 1) {
+            result[i] = HEADER + i * RECORD;
+        }
+        int i = sorted;
+        for (int pos : tail.values()) {
+            result[i] = pos;
+            i += 1;
+        }
+        return result;
+    }
+
+    /** Return the path of the record at POS. */
+    private String path(int pos) {
+        byte[] name = new byte[buf.getInt(pos + 4)];
+        buf.get(buf.getInt(pos), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Return the entry whose record is at POS. */
+    private Entry entry(int pos) {
+        byte[] id = new byte[ObjectId.LENGTH];
+        buf.get(pos + 8, id);
+        return new Entry(path(pos), decode(id), buf.getInt(pos + 28),
+                buf.getLong(pos + 32), buf.getLong(pos + 40));
+    }
+
+    /** Return the SHA1 code ID as ObjectId.LENGTH bytes, all zero if ID
+     * is "". */
+    private static byte[] encode(String id) {
+        byte[] result = new byte[ObjectId.LENGTH];
+        if (!id.isEmpty()) {
+            ObjectId.write(id, result, 0);
+        }
+        return result;
+    }
+
+    /** Return the SHA1 code held in the bytes ID, or "" if all are 0. */
+    private static String decode(byte[] id) {
+        for (byte b : id) {
+            if (b != 0) {
+                return ObjectId.hex(id, 0);
+            }
+        }
+        return "";
+    }
+
+    /** One entry of the index. */
+    static final class Entry {
+
+        /** The entry for PATH with code ID and flags FLAGS, whose file had
+         * time MTIME and size SIZE, or -1 if these are unknown. */
+        Entry(String path, String id, int flags, long mtime, long size) {
+            this.path = path;
+            this.id = id;
+            this.flags = flags;
+            this.mtime = mtime;
+            this.size = size;
+        }
+
+        /** Return the path. */
+        String path() {
+            return path;
+        }
+
+        /** Return the blob SHA1 code. */
+        String id() {
+            return id;
+        }
+
+        /** Return the flags. */
+        int flags() {
+            return flags;
+        }
+
+        /** Return the modification time in nanoseconds. */
+        long mtime() {
+            return mtime;
+        }
+
+        /** Return the size, or -1 if unknown. */
+        long size() {
+            return size;
+        }
+
+        /** The path. */
+        private final String path;
+
+        /** The blob SHA1 code. */
+        private final String id;
+
+        /** The flags. */
+        private final int flags;
+
+        /** The modification time and size of the file. */
+        private final long mtime, size;
+    }
+
+    /** The index file. */
+    private final File file;
+
+    /** True if others may be reading the file. */
+    private final boolean shared;
+
+    /** The contents of the file, mapped once the file exists. */
+    private ByteBuffer buf;
+
+    /** Length of the file. */
+    private int end;
+
+    /** Number of sorted records. */
+    private int sorted;
+
+    /** Length of the heap of sorted paths. */
+    private int heap;
+
+    /** Number of tail entries. */
+    private int tailCount;
+
+    /** Position of each tail entry, by path. */
+    private final Map<String, Integer> tail = new HashMap<>();
+
+    /** Entries not yet in the file, by path. */
+    private final TreeMap<String, Entry> pending = new TreeMap<>();
+
+    /** True if the next save should rewrite the file. */
+    private boolean compact;
+}
@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** The contents of a file seen as a sequence of lines. Lines are never
+ * copied out of the file's bytes: each is kept as its offsets in those
+ * bytes and a number that is the same for equal lines, so comparing two
+ * lines is comparing two ints.
+ * @author AMK Somani
+ */
+class Lines {
+
+    /** Lines of DATA, starting at the offsets in STARTS (which end with
+     * the length of DATA) and numbered IDS. */
+    private Lines(byte[] data, int[] starts, int[] ids) {
+        this.data = data;
+        this.starts = starts;
+        this.ids = ids;
+    }
+
+    /** Return the lines of each of CONTENTS, numbered so that equal lines
+     * in any of them get the same number. */
+    static Lines[] split(byte[]... contents) {
+        HashMap<Key, Integer> numbers = new HashMap<>();
+        Lines[] result = new Lines[contents.length];
+        for (int f = 0; f < contents.length; f += 1) {
+            byte[] data = contents[f];
+            int count = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n') {
+                    count += 1;
+                }
+            }
+            if (data.length > 0 && data[data.length - 1] != '\n') {
+                count += 1;
+            }
+            int[] starts = new int[count + 1];
+            int[] ids = new int[count];
+            int line = 0;
+            for (int i = 0; i < data.length; line += 1) {
+                int end = i;
+                while (end < data.length && data[end] != '\n') {
+                    end += 1;
+                }
+                end = Math.min(end + 1, data.length);
+                starts[line] = i;
+                Key k = new Key(data, i, end);
+                Integer id = numbers.get(k);
+                if (id == null) {
+                    id = numbers.size();
+                    numbers.put(k, id);
+                }
+                ids[line] = id;
+                i = end;
+            }
+            starts[count] = data.length;
+            result[f] = new Lines(data, starts, ids);
+        }
+        return result;
+    }
+
+    /** Return the number of lines. */
+    int size() {
+        return ids.length;
+    }
+
+    /** Return the numbers of the lines, in order. */
+    int[] ids() {
+        return ids;
+    }
+
+    /** Return line I as text, without its newline. */
+    String text(int i) {
+        int end = starts[i + 1];
+        if (end > starts[i] && data[end - 1] == '\n') {
+            end -= 1;
+        }
+        return new String(data, starts[i], end - starts[i],
+                StandardCharsets.UTF_8);
+    }
+
+    /** Returns true if lines FROM to TO of this and lines OFROM to OTO of
+     * OTHER are the same. */
+    boolean sameAs(int from, int to, Lines other, int oFrom, int oTo) {
+        return Arrays.equals(ids, from, to, other.ids, oFrom, oTo);
+    }
+
+    /** Write lines FROM up to but not including TO to OUT. If NEWLINE,
+     * make sure what is written ends with a newline. */
+    void write(OutputStream out, int from, int to, boolean newline)
+            throws IOException {
+        if (from >= to) {
+            return;
+        }
+        out.write(data, starts[from], starts[to] - starts[from]);
+        if (newline && data[starts[to] - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+
+    /** Write line I to OUT after the character PREFIX, ending it with a
+     * newline and a note if the file has none there. */
+    void writeLine(OutputStream out, int i, char prefix) throws IOException {
+        out.write(prefix);
+        out.write(data, starts[i], starts[i + 1] - starts[i]);
+        if (data[starts[i + 1] - 1] != '\n') {
+            out.write(NO_NEWLINE);
+        }
+    }
+
+    /** A line of some file's bytes, used to number equal lines alike. */
+    private static final class Key {
+
+        /** The line of DATA from START up to END. */
+        Key(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; i += 1) {
+                h = 31 * h + data[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return hash == k.hash && Arrays.equals(data, start, end,
+                    k.data, k.start, k.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /** The bytes holding the line. */
+        private final byte[] data;
+
+        /** Where the line starts and ends in DATA. */
+        private final int start, end;
+
+        /** Hash of the line's bytes. */
+        private final int hash;
+    }
+
+    /** Written after a last line that has no newline. */
+    private static final byte[] NO_NEWLINE =
+            "\n\\ No newline at end of file\n".getBytes(
+                    StandardCharsets.UTF_8);
+
+    /** The bytes of the file. */
+    private final byte[] data;
+
+    /** Offset of each line in DATA, followed by the length of DATA. */
+    private final int[] starts;
+
+    /** The number of each line. */
+    private final int[] ids;
+}
@@ -0,0 +1,307 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/** A lock on a gitlet directory, shared by any number of readers or
+ * held by one writer. A writer creates the file "lock" in the
+ * directory, which only one can do at a time, and then waits for the
+ * readers to leave. A reader adds a file of its own to the directory
+ * "readers" and then checks that there is no "lock"; if there is, it
+ * removes its file and tries again later. Since each side registers
+ * before checking for the other, a reader and a writer never both go
+ * ahead, and readers never wait for one another.
+ *
+ * Each lock file holds the process id and host of its owner and the
+ * time it was taken. A lock is stale if its owner is a process on this
+ * host that has ended, or, for other hosts, if it is older than
+ * STALE_AGE; stale locks are removed by whoever finds them.
+ * @author AMK Somani
+ */
+class Lock implements AutoCloseable {
+
+    /** Longest time to wait for a lock, unless set in seconds by the
+     * GITLET_LOCK_TIMEOUT environment variable. */
+    static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
+    /** Age after which a lock whose owner cannot be checked is stale. */
+    static final long STALE_AGE = TimeUnit.MINUTES.toMillis(10);
+
+    /** Longest pause between attempts, in milliseconds. */
+    static final long MAX_PAUSE = 100;
+
+    /** Return a shared lock on the gitlet directory DIR, waiting while a
+     * writer holds it. */
+    static Lock shared(File dir) throws GitletException {
+        return acquire(dir, false);
+    }
+
+    /** Return the exclusive lock on the gitlet directory DIR, waiting
+     * while a writer holds it or readers hold it. */
+    static Lock exclusive(File dir) throws GitletException {
+        return acquire(dir, true);
+    }
+
+    /** Return the result of OP, run holding a shared lock on the gitlet
+     * directory DIR. */
+    static <T> T shared(File dir, Supplier<T> op) throws GitletException {
+        return holding(acquire(dir, false), op);
+    }
+
+    /** Return the result of OP, run holding the exclusive lock on the
+     * gitlet directory DIR. */
+    static <T> T exclusive(File dir, Supplier<T> op)
+            throws GitletException {
+        return holding(acquire(dir, true), op);
+    }
+
+    /** Return the result of OP, releasing LOCK once it is done. */
+    private static <T> T holding(Lock lock, Supplier<T> op) {
+        try {
+            return op.get();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /** Returns true if this thread holds a shared lock on this
+     * repository, so must not change it in place. */
+    static boolean sharedOnly() {
+        Lock l = HELD.get();
+        return l != null && !l.exclusive;
+    }
+
+    /** A lock, exclusive if EXCLUSIVE, held through the file FILE whose
+     * contents are TOKEN. */
+    private Lock(boolean exclusive, File file, String token) {
+        this.exclusive = exclusive;
+        this.file = file;
+        this.token = token;
+    }
+
+    /** Return a lock on DIR, exclusive if EXCLUSIVE. */
+    private static Lock acquire(File dir, boolean exclusive)
+            throws GitletException {
+        long deadline = System.currentTimeMillis() + timeout();
+        String token = PID + " " + HOST + " " + System.currentTimeMillis()
+                + " " + UUID.randomUUID();
+        File lock = Utils.join(dir, "lock");
+        File readers = Utils.join(dir, "readers");
+        Repo.createDir(readers);
+        Lock result;
+        if (exclusive) {
+            for (int tries = 0; !create(lock, token); tries += 1) {
+                if (!breakIfStale(lock)) {
+                    pause(tries, deadline);
+                }
+            }
+            result = new Lock(true, lock, token);
+            try {
+                waitForReaders(readers, deadline);
+            } catch (GitletException excp) {
+                result.close();
+                throw excp;
+            }
+        } else {
+            File mine = Utils.join(readers,
+                    PID + "-" + UUID.randomUUID());
+            for (int tries = 0;; tries += 1) {
+                if (!create(mine, token)) {
+                    throw Utils.error("Could not lock the repository.");
+                }
+                if (!lock.exists()) {
+                    break;
+                }
+                mine.delete();
+                if (!breakIfStale(lock)) {
+                    pause(tries, deadline);
+                }
+            }
+            result = new Lock(false, mine, token);
+        }
+        if (dir.getAbsoluteFile().equals(Repo.gitlet().getAbsoluteFile())) {
+            HELD.set(result);
+        }
+        return result;
+    }
+
+    /** Wait until the directory READERS has no live readers' files,
+     * removing stale ones, giving up at time DEADLINE. */
+    private static void waitForReaders(File readers, long deadline)
+            throws GitletException {
+        for (int tries = 0;; tries += 1) {
+            boolean busy = false;
+            for (String name : Utils.plainFilenamesIn(readers)) {
+                File f = Utils.join(readers, name);
+                if (isStale(f)) {
+                    f.delete();
+                } else {
+                    busy = true;
+                }
+            }
+            if (!busy) {
+                return;
+            }
+            pause(tries, deadline);
+        }
+    }
+
+    /** Create the file F holding TOKEN, unless it exists. Returns true if
+     * this call created it. */
+    private static boolean create(File f, String token) {
+        try {
+            Files.write(f.toPath(), token.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw Utils.error("Could not lock the repository.");
+        }
+    }
+
+    /** Remove the lock file LOCK if it is stale. It is first moved
+     * aside and checked again, so that two processes breaking it at once
+     * cannot remove a lock taken in between; a live lock moved aside by
+     * mistake is put back unless another has been taken meanwhile.
+     * Returns true if the lock was removed. */
+    private static boolean breakIfStale(File lock) {
+        if (!isStale(lock)) {
+            return false;
+        }
+        File aside = new File(lock.getPath() + "." + UUID.randomUUID());
+        try {
+            Files.move(lock.toPath(), aside.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            return false;
+        }
+        try {
+            if (!isStale(aside)) {
+                create(lock, new String(Files.readAllBytes(aside.toPath()),
+                        StandardCharsets.UTF_8));
+                return false;
+            }
+            return true;
+        } catch (IOException excp) {
+            return false;
+        } finally {
+            aside.delete();
+        }
+    }
+
+    /** Returns true if the lock file F belongs to no live owner. */
+    private static boolean isStale(File f) {
+        String[] owner;
+        try {
+            owner = new String(Files.readAllBytes(f.toPath()),
+                    StandardCharsets.UTF_8).trim().split(" ");
+        } catch (IOException excp) {
+            return false;
+        }
+        if (owner.length < 3) {
+            return System.currentTimeMillis() - f.lastModified()
+                    > STALE_AGE;
+        }
+        try {
+            if (owner[1].equals(HOST)) {
+                return !ProcessHandle.of(Long.parseLong(owner[0]))
+                        .map(ProcessHandle::isAlive).orElse(false);
+            }
+            return System.currentTimeMillis() - Long.parseLong(owner[2])
+                    > STALE_AGE;
+        } catch (NumberFormatException excp) {
+            return true;
+        }
+    }
+
+    /** Wait a little before attempt TRIES + 1, throwing an error if that
+     * would pass time DEADLINE. */
+    private static void pause(int tries, long deadline)
+            throws GitletException {
+        long wait = Math.min(MAX_PAUSE, 1L << Math.min(tries, 7));
+        if (System.currentTimeMillis() + wait > deadline) {
+            throw Utils.error("Another gitlet process is using the "
+                    + "repository; try again later.");
+        }
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted.");
+        }
+    }
+
+    /** Return the longest time to wait for a lock, in milliseconds. */
+    private static long timeout() {
+        String value = System.getenv("GITLET_LOCK_TIMEOUT");
+        if (value != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(
+                        value.trim()));
+            } catch (NumberFormatException excp) {
+                return DEFAULT_TIMEOUT;
+            }
+        }
+        return DEFAULT_TIMEOUT;
+    }
+
+    /** Release this lock. A writer's lock file is only removed if it is
+     * still this lock's. */
+    @Override
+    public void close() {
+        if (HELD.get() == this) {
+            HELD.remove();
+        }
+        if (exclusive) {
+            try {
+                String held = new String(Files.readAllBytes(file.toPath()),
+                        StandardCharsets.UTF_8);
+                if (!held.equals(token)) {
+                    return;
+                }
+            } catch (IOException excp) {
+                return;
+            }
+        }
+        file.delete();
+    }
+
+    /** Return the name of this host, or "unknown". */
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName()
+                    .replace(' ', '_');
+        } catch (IOException excp) {
+            return "unknown";
+        }
+    }
+
+    /** This process's id. */
+    private static final long PID = ProcessHandle.current().pid();
+
+    /** This host's name. */
+    private static final String HOST = hostName();
+
+    /** The lock on this repository held by each thread, if any. */
+    private static final ThreadLocal<Lock> HELD = new ThreadLocal<>();
+
+    /** True for a writer's lock. */
+    private final boolean exclusive;
+
+    /** The file that holds the lock. */
+    private final File file;
+
+    /** The contents of FILE. */
+    private final String token;
+}
@@ -10,6 +10,7 @@ public class Main {
      *  init
      *  */
     public static void main(String... args) {
+        long start = Metrics.start();
         try {
             if (args.length == 0) {
                 throw Utils.error("Please enter a command.");
@@ -18,6 +19,7 @@ public class Main {
         } catch (GitletException e) {
             System.out.print(e.getMessage());
         } finally {
+            Metrics.report((args.length == 0) ? "" : args[0], start);
             System.exit(0);
         }
     }
@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** A line-based three-way merge. The changes from a common ancestor
+ * to each side are found with Diff; changes that touch different lines
+ * are all taken, and only regions that both sides changed differently
+ * become conflicts.
+ * @author AMK Somani
+ */
+class Merge3 {
+
+    /** Marker opening a conflict, followed by our lines. */
+    static final String OURS = "<<<<<<< HEAD\n";
+
+    /** Marker between our lines and theirs in a conflict. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Marker closing a conflict. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** Write to OUT the merge of the file contents OURS and THEIRS,
+     * whose common ancestor had contents BASE. Returns true if any
+     * region conflicted. */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        Lines[] lines = Lines.split(base, ours, theirs);
+        Lines o = lines[0], a = lines[1], b = lines[2];
+        List<Diff.Hunk> ha = Diff.hunks(o.ids(), a.ids());
+        List<Diff.Hunk> hb = Diff.hunks(o.ids(), b.ids());
+        boolean conflict = false;
+        int pos = 0, i = 0, j = 0;
+        while (i < ha.size() || j < hb.size()) {
+            int lo, hi;
+            if (j == hb.size() || (i < ha.size()
+                    && ha.get(i).aStart <= hb.get(j).aStart)) {
+                lo = ha.get(i).aStart;
+                hi = ha.get(i).aEnd;
+            } else {
+                lo = hb.get(j).aStart;
+                hi = hb.get(j).aEnd;
+            }
+            int i0 = i, j0 = j;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                while (i < ha.size() && ha.get(i).aStart <= hi) {
+                    hi = Math.max(hi, ha.get(i).aEnd);
+                    i += 1;
+                    grew = true;
+                }
+                while (j < hb.size() && hb.get(j).aStart <= hi) {
+                    hi = Math.max(hi, hb.get(j).aEnd);
+                    j += 1;
+                    grew = true;
+                }
+            }
+            o.write(out, pos, lo, false);
+            pos = hi;
+            if (i0 == i) {
+                writeSide(out, b, hb, j0, j, lo, hi, false);
+            } else if (j0 == j) {
+                writeSide(out, a, ha, i0, i, lo, hi, false);
+            } else if (a.sameAs(start(ha, i0, lo), end(ha, i, hi),
+                    b, start(hb, j0, lo), end(hb, j, hi))) {
+                writeSide(out, a, ha, i0, i, lo, hi, false);
+            } else {
+                conflict = true;
+                out.write(OURS.getBytes(StandardCharsets.UTF_8));
+                writeSide(out, a, ha, i0, i, lo, hi, true);
+                out.write(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+                writeSide(out, b, hb, j0, j, lo, hi, true);
+                out.write(THEIRS.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        o.write(out, pos, o.size(), false);
+        return conflict;
+    }
+
+    /** Write to OUT the lines of SIDE covering lines LO to HI of the
+     * ancestor, where HUNKS FROM up to TO are the side's changes in that
+     * region. If NEWLINE, end what is written with a newline. */
+    private static void writeSide(OutputStream out, Lines side,
+                                  List<Diff.Hunk> hunks, int from, int to,
+                                  int lo, int hi, boolean newline)
+            throws IOException {
+        side.write(out, start(hunks, from, lo), end(hunks, to, hi), newline);
+    }
+
+    /** Return the line of a side corresponding to ancestor line LO, where
+     * HUNKS at FIRST is the side's first change at or after LO. */
+    private static int start(List<Diff.Hunk> hunks, int first, int lo) {
+        Diff.Hunk h = hunks.get(first);
+        return h.bStart - (h.aStart - lo);
+    }
+
+    /** Return the line of a side corresponding to ancestor line HI, where
+     * HUNKS just before LAST is the side's last change before HI. */
+    private static int end(List<Diff.Hunk> hunks, int last, int hi) {
+        Diff.Hunk h = hunks.get(last - 1);
+        return h.bEnd + (hi - h.aEnd);
+    }
+}
@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters of the work done by a command: for each kind of operation,
+ * the number of calls, the bytes they moved and the nanoseconds they
+ * took, summed over every thread. Counting is on only when the
+ * environment variable GITLET_METRICS is set, to "stderr" to have a
+ * summary printed to the standard error when the command ends, or to
+ * the name of a file to have it appended there as one line of JSON.
+ * When it is off, ENABLED is a constant false and every call here
+ * returns at once.
+ * @author AMK Somani
+ */
+class Metrics {
+
+    /** The kinds of operation counted. */
+    enum Op {
+        /** Reading an object, serialized or raw, from the objects
+         * directory. */
+        READ_OBJECT("readObject"),
+        /** Writing an object to the objects directory. */
+        WRITE_OBJECT("writeObject"),
+        /** Computing a SHA-1 code. */
+        SHA1("sha1"),
+        /** Listing the plain files of a directory; its bytes are those
+         * of the names listed. */
+        LIST_FILES("plainFilenamesIn"),
+        /** Reading a branch or the head. */
+        READ_REF("readRef");
+
+        /** An operation reported under the name KEY. */
+        Op(String key) {
+            this.key = key;
+        }
+
+        /** The name under which this is reported. */
+        private final String key;
+    }
+
+    /** Where the summary goes: "stderr", a file name, or null if
+     * counting is off. */
+    static final String DESTINATION = System.getenv("GITLET_METRICS");
+
+    /** True if operations are counted. */
+    static final boolean ENABLED = DESTINATION != null
+            && !DESTINATION.isEmpty();
+
+    /** Return the time at which an operation starts, or 0 if counting
+     * is off. */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** Count one operation OP that began at START and moved BYTES
+     * bytes. */
+    static void record(Op op, long start, long bytes) {
+        if (!ENABLED) {
+            return;
+        }
+        int i = op.ordinal();
+        CALLS[i].increment();
+        BYTES[i].add(bytes);
+        NANOS[i].add(System.nanoTime() - start);
+    }
+
+    /** Report the counts for the command COMMAND, which began at START,
+     * as counting is set up to. */
+    static void report(String command, long start) {
+        if (!ENABLED) {
+            return;
+        }
+        String json = summary(command, System.nanoTime() - start);
+        if (DESTINATION.equals("stderr")) {
+            System.err.println(json);
+            return;
+        }
+        try {
+            Files.write(new File(DESTINATION).toPath(),
+                    (json + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            System.err.println("Cannot write metrics to " + DESTINATION);
+        }
+    }
+
+    /** Return the counts for the command COMMAND, which took NANOS
+     * nanoseconds, as a line of JSON. */
+    static String summary(String command, long nanos) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"command\":\"").append(escape(command))
+                .append("\",\"nanos\":").append(nanos).append(",\"ops\":{");
+        for (Op op : Op.values()) {
+            int i = op.ordinal();
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(op.key).append("\":{\"calls\":")
+                    .append(CALLS[i].sum()).append(",\"bytes\":")
+                    .append(BYTES[i].sum()).append(",\"nanos\":")
+                    .append(NANOS[i].sum()).append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /** Return S with the characters JSON gives meaning to escaped. */
+    private static String escape(String s) {
+        StringBuilder out = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /** Return one new counter for each kind of operation. */
+    private static LongAdder[] counters() {
+        LongAdder[] result = new LongAdder[Op.values().length];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    /** Calls of each kind of operation, by ordinal. */
+    private static final LongAdder[] CALLS = counters();
+
+    /** Bytes moved by each kind of operation, by ordinal. */
+    private static final LongAdder[] BYTES = counters();
+
+    /** Nanoseconds taken by each kind of operation, by ordinal. */
+    private static final LongAdder[] NANOS = counters();
+}
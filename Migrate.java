@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** The renaming of a repository's objects to the codes the current
+ * formats give them. Older versions named a blob by its contents and
+ * its file name together, so the same contents under two names were
+ * stored twice, and serialized commits, naming them by a hash that
+ * depended on how Java laid out their maps. Every blob a commit refers
+ * to is saved again under its new code, in the raw format; two that
+ * now share a code become one. Every commit is then written again,
+ * oldest first, in the canonical encoding with its files and parents
+ * renamed, and the branches, the index and the shallow commits are
+ * moved onto the new commits. Commits already in the encoding whose
+ * files and parents keep their codes keep theirs too, so running this
+ * again does nothing. The old objects are left behind, dangling, for
+ * gc to prune.
+ * @author AMK Somani
+ */
+public class Migrate {
+
+    /** Return the result of migrating the current repository. */
+    static Migrate run() throws GitletException {
+        Migrate m = new Migrate();
+        m.rewrite(m.commits());
+        Branch.moveHeads(m.commits);
+        Stage.translate(m.blobs);
+        Commit.translateShallow(m.commits);
+        Repository.current().forgetCommits();
+        return m;
+    }
+
+    /** A migration yet to be run. */
+    private Migrate() {
+    }
+
+    /** Return every commit reachable from a branch, each after its
+     * parents. */
+    private List<Commit> commits() {
+        List<Commit> order = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Deque<Commit> path = new ArrayDeque<>();
+        Deque<Integer> next = new ArrayDeque<>();
+        for (String head : Branch.allHeads()) {
+            if (head.isEmpty() || !seen.add(head)) {
+                continue;
+            }
+            path.push(Commit.getCommit(head));
+            next.push(0);
+            while (!path.isEmpty()) {
+                List<String> parents = path.peek().getParents();
+                int i = next.pop();
+                if (i < parents.size()) {
+                    next.push(i + 1);
+                    if (seen.add(parents.get(i))) {
+                        path.push(Commit.getCommit(parents.get(i)));
+                        next.push(0);
+                    }
+                } else {
+                    order.add(path.pop());
+                }
+            }
+        }
+        return order;
+    }
+
+    /** Save every blob the commits ORDER refer to under its new code,
+     * then write the commits again, parents first. */
+    private void rewrite(List<Commit> order) {
+        for (Commit c : order) {
+            for (String code : c.files().values()) {
+                if (!blobs.containsKey(code)) {
+                    rename(code);
+                }
+            }
+        }
+        for (Commit c : order) {
+            Commit moved = c.translate(blobs, commits);
+            if (moved != c) {
+                commits.put(c.sha1(), moved.sha1());
+            }
+        }
+    }
+
+    /** Save the blob CODE under the code of its contents, noting the
+     * change if there is one. */
+    private void rename(String code) {
+        Blob b = Blob.get(code);
+        if (b == null) {
+            throw Utils.error("Cannot read blob %s; nothing was changed.",
+                    code);
+        }
+        String renamed = b.shaCode();
+        blobs.put(code, renamed);
+        if (!renamed.equals(code)) {
+            b.saveCode(renamed);
+        }
+        kept.add(renamed);
+    }
+
+    /** Return the number of blobs the commits refer to. */
+    public int blobsBefore() {
+        return blobs.size();
+    }
+
+    /** Return the number of blobs left after those with the same
+     * contents became one. */
+    public int blobsAfter() {
+        return kept.size();
+    }
+
+    /** Return the number of commits written again. */
+    public int commitsRewritten() {
+        return commits.size();
+    }
+
+    /** The new code of every blob referred to, by its old one. */
+    private final Map<String, String> blobs = new HashMap<>();
+
+    /** The new codes of the blobs. */
+    private final Set<String> kept = new HashSet<>();
+
+    /** The new code of every commit written again, by its old one. */
+    private final Map<String, String> commits = new HashMap<>();
+}
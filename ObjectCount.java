@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** The numbers of a repository's objects, of each type, and the space
+ * they take. The object files are read in parallel. Besides the blobs
+ * stored, the versions of files the commits record are counted: a
+ * version is a file name with the blob it had, so a blob that several
+ * names or a rename share is one blob but several versions, and the
+ * difference between the two is what storing blobs once saves.
+ * @author AMK Somani
+ */
+public class ObjectCount {
+
+    /** Number of threads reading objects. */
+    static final int THREADS = 16;
+
+    /** Return the counts of the objects of the current repository. */
+    static ObjectCount count() {
+        ObjectCount c = new ObjectCount();
+        List<String> names = Utils.plainFilenamesIn(Repo.objects());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int slice = Math.max(1, (names.size() + THREADS - 1) / THREADS);
+        for (int from = 0; from < names.size(); from += slice) {
+            List<String> part = names.subList(from,
+                    Math.min(names.size(), from + slice));
+            tasks.add(() -> {
+                for (String name : part) {
+                    c.count(Utils.join(Repo.objects(), name));
+                }
+                return null;
+            });
+        }
+        Utils.runAll(tasks, THREADS);
+        return c;
+    }
+
+    /** Counts yet to be made. */
+    private ObjectCount() {
+    }
+
+    /** Count the object file FILE. */
+    private void count(File file) {
+        bytes.add(file.length());
+        if (Commit.isRaw(file)) {
+            String name = file.getName();
+            count(Commit.read(file,
+                    name.substring(0, name.length() - ".txt".length())));
+            return;
+        } else if (Blob.isRaw(file)) {
+            blobs.increment();
+            return;
+        }
+        Saveable obj = Utils.readObject(file, Saveable.class);
+        if (obj instanceof Blob) {
+            blobs.increment();
+        } else if (obj instanceof Commit) {
+            count((Commit) obj);
+        }
+    }
+
+    /** Count the commit C and the versions of files it records. */
+    private void count(Commit c) {
+        commits.increment();
+        for (Map.Entry<String, String> e : c.files().entrySet()) {
+            versions.add(e.getKey() + "\0" + e.getValue());
+            referenced.add(e.getValue());
+        }
+    }
+
+    /** Return the number of commits. */
+    public long commits() {
+        return commits.sum();
+    }
+
+    /** Return the number of blobs. */
+    public long blobs() {
+        return blobs.sum();
+    }
+
+    /** Return the number of bytes the object files take. */
+    public long bytes() {
+        return bytes.sum();
+    }
+
+    /** Return the number of distinct versions of files the commits
+     * record. */
+    public long versions() {
+        return versions.size();
+    }
+
+    /** Return the number of those versions that need no blob of their
+     * own, since another version has the same contents. */
+    public long deduplicated() {
+        return versions.size() - referenced.size();
+    }
+
+    /** Commits counted. */
+    private final LongAdder commits = new LongAdder();
+
+    /** Blobs counted. */
+    private final LongAdder blobs = new LongAdder();
+
+    /** Bytes of the object files counted. */
+    private final LongAdder bytes = new LongAdder();
+
+    /** Each file name a commit records, with its blob. */
+    private final Set<String> versions = ConcurrentHashMap.newKeySet();
+
+    /** Each blob a commit records. */
+    private final Set<String> referenced = ConcurrentHashMap.newKeySet();
+}
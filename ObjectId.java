@@ -0,0 +1,64 @@
+package gitlet;
+
+/** Static helpers between the two forms of the SHA1 code of an object:
+ * 40 hexadecimal characters, and the 20 bytes that trees and the index
+ * pack codes as. There are no instances; a code is passed around as its
+ * hexadecimal string or as an offset into packed bytes.
+ * @author AMK Somani
+ */
+public final class ObjectId {
+
+    /** Number of bytes in a code. */
+    static final int LENGTH = 20;
+
+    /** Not instantiable. */
+    private ObjectId() {
+    }
+
+    /** Write the code whose hexadecimal form is HEX to the LENGTH bytes
+     * of BYTES from OFFSET. Throws an error if HEX is not a code. */
+    static void write(String hex, byte[] bytes, int offset) {
+        if (hex.length() != 2 * LENGTH) {
+            throw Utils.error("Not an object id: %s", hex);
+        }
+        for (int i = 0; i < LENGTH; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw Utils.error("Not an object id: %s", hex);
+            }
+            bytes[offset + i] = (byte) ((hi << 4) | lo);
+        }
+    }
+
+    /** Return the hexadecimal form of the LENGTH bytes of BYTES from
+     * OFFSET. */
+    static String hex(byte[] bytes, int offset) {
+        char[] out = new char[2 * LENGTH];
+        for (int i = 0; i < LENGTH; i += 1) {
+            out[2 * i] = DIGITS[(bytes[offset + i] >> 4) & 0xf];
+            out[2 * i + 1] = DIGITS[bytes[offset + i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    /** Returns true if HEX is the hexadecimal form of the LENGTH bytes
+     * of BYTES from OFFSET. */
+    static boolean matches(byte[] bytes, int offset, String hex) {
+        if (hex == null || hex.length() != 2 * LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < LENGTH; i += 1) {
+            if (Character.digit(hex.charAt(2 * i), 16)
+                    != ((bytes[offset + i] >> 4) & 0xf)
+                    || Character.digit(hex.charAt(2 * i + 1), 16)
+                    != (bytes[offset + i] & 0xf)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The hexadecimal digits. */
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+}
@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A pack is a single compressed stream holding every object needed to
+ * bring one repository up to date with a history in another. Each
+ * object is written as its SHA1 code, its length and the bytes of its
+ * file in the objects directory. Blobs come first and commits follow,
+ * each after its parents, so a pack that is cut off part way leaves
+ * the receiving store consistent. An empty code ends the pack.
+ * @author AMK Somani
+ */
+public class Pack {
+
+    /** Size of the buffers used around the compressed stream. */
+    private static final int BUFFER = 1 << 16;
+
+    /** The form of an object's SHA1 code. */
+    private static final Pattern ID = Pattern.compile("[0-9a-f]{40}");
+
+    /** Returns true if ID has the form of an object's SHA1 code, so that
+     * it can safely name a file in the objects directory. */
+    static boolean isId(String id) {
+        return ID.matcher(id).matches();
+    }
+
+    /** Throw an error unless ID, received from a peer, has the form of
+     * an object's SHA1 code. */
+    static void checkId(String id) throws GitletException {
+        if (!isId(id)) {
+            throw Utils.error("Not an object id: %s", id);
+        }
+    }
+
+    /** Write to OUT a pack of the commits COMMITS, taken from the gitlet
+     * directory REPO and ordered parents first, together with every blob
+     * they track except those in EXCLUDE. OUT is flushed but not closed.
+     * Returns the number of objects written. */
+    public static int write(OutputStream out, File repo,
+                            List<Commit> commits, Set<String> exclude)
+            throws IOException {
+        Set<String> blobs = new LinkedHashSet<>();
+        for (Commit c : commits) {
+            for (String filename : c.getFileSet()) {
+                String code = c.fileCode(filename);
+                if (!exclude.contains(code)) {
+                    blobs.add(code);
+                }
+            }
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        DeflaterOutputStream zip =
+                new DeflaterOutputStream(out, deflater, BUFFER);
+        DataOutputStream data = new DataOutputStream(zip);
+        File objects = Utils.join(repo, "objects");
+        for (String id : blobs) {
+            writeObject(data, objects, id);
+        }
+        for (Commit c : commits) {
+            writeObject(data, objects, c.sha1());
+        }
+        data.writeUTF("");
+        data.flush();
+        zip.finish();
+        deflater.end();
+        out.flush();
+        return blobs.size() + commits.size();
+    }
+
+    /** Write the object ID from the directory OBJECTS to DATA. */
+    private static void writeObject(DataOutputStream data, File objects,
+                                    String id) throws IOException {
+        File f = Utils.join(objects, id + ".txt");
+        data.writeUTF(id);
+        data.writeLong(f.length());
+        Files.copy(f.toPath(), data);
+    }
+
+    /** Read a pack from IN into the gitlet directory REPO, skipping the
+     * objects REPO already has. Each object only appears under its final
+     * name once it has been written completely and found to be the
+     * object of that name; an error is thrown at the first that is not.
+     * Returns the number of objects added. */
+    public static int read(InputStream in, File repo) throws IOException {
+        DataInputStream data = new DataInputStream(
+                new InflaterInputStream(in, new Inflater(), BUFFER));
+        File objects = Utils.join(repo, "objects");
+        File tmpDir = Utils.join(repo, "tmp");
+        Repo.createDir(tmpDir);
+        int added = 0;
+        for (String id = data.readUTF(); !id.equals("");
+             id = data.readUTF()) {
+            checkId(id);
+            long length = data.readLong();
+            File dest = Utils.join(objects, id + ".txt");
+            if (dest.exists()) {
+                data.skipNBytes(length);
+                continue;
+            }
+            File tmp = File.createTempFile(id, ".tmp", tmpDir);
+            try (OutputStream o = Files.newOutputStream(tmp.toPath())) {
+                copy(data, o, length);
+            }
+            if (Fsck.verified(tmp, id) == null) {
+                tmp.delete();
+                throw Utils.error("Object %s does not match its id.", id);
+            }
+            Files.move(tmp.toPath(), dest.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            added += 1;
+        }
+        return added;
+    }
+
+    /** Copy exactly LENGTH bytes from IN to OUT. */
+    private static void copy(InputStream in, OutputStream out, long length)
+            throws IOException {
+        byte[] buf = new byte[BUFFER];
+        while (length > 0) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length, length));
+            if (n < 0) {
+                throw new IOException("truncated pack");
+            }
+            out.write(buf, 0, n);
+            length -= n;
+        }
+    }
+}
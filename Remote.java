@@ -0,0 +1,304 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+/** Transfers commits and blobs from a remote gitlet repository into
+ * this one, either straight from its directory or through a gitlet
+ * server (see Transport). Only the objects that are missing locally
+ * are copied, so an interrupted transfer picks up where it stopped.
+ * @author AMK Somani
+ */
+public class Remote {
+
+    /** Largest number of objects copied at the same time. */
+    static final int COPY_THREADS = 8;
+
+    /** Prefix of remote locations that are served by a gitlet server
+     * rather than read from the file system. */
+    static final String SCHEME = "gitlet://";
+
+    /** Return the location recorded for the remote named NAME, throwing
+     * an error if there is no such remote. */
+    public static String location(String name) throws GitletException {
+        File f = Utils.join(Repo.remotes(), name + ".txt");
+        if (!f.exists()) {
+            throw Utils.error("Remote directory not found.");
+        }
+        return Utils.readContentsAsString(f).trim();
+    }
+
+    /** Returns true if LOCATION names a gitlet server. */
+    public static boolean isServed(String location) {
+        return location.startsWith(SCHEME);
+    }
+
+    /** Return the .gitlet directory of the remote named NAME, throwing
+     * an error if the remote or its directory does not exist. A relative
+     * location is taken from the root of this repository. */
+    public static File directory(String name) throws GitletException {
+        File remote = new File(location(name));
+        if (!remote.isAbsolute()) {
+            remote = Utils.join(Repo.root(), location(name));
+        }
+        if (!remote.exists()) {
+            throw Utils.error("Remote directory not found.");
+        }
+        return remote;
+    }
+
+    /** Copy the history of BRANCH in the remote named REMOTENAME into
+     * this repository and point the branch REMOTENAME/BRANCH at its
+     * head. If DEPTH is positive, only the DEPTH most recent commits
+     * are copied and the oldest of them are recorded as shallow. A
+     * repository that is already shallow walks the remote's history
+     * again from its head, so that a deeper fetch fills in what an
+     * earlier one left out, and its commits whose parents have all
+     * arrived stop being shallow. Returns the SHA1 code of the fetched
+     * head. */
+    public static String fetch(String remoteName, String branch, int depth)
+            throws GitletException {
+        String location = location(remoteName);
+        String head;
+        if (isServed(location)) {
+            head = Transport.fetch(location, branch, depth);
+        } else {
+            head = fetchLocal(directory(remoteName), branch, depth);
+        }
+        Commit.trimShallow();
+        Branch.updateRemoteBranch(remoteName, branch, head);
+        return head;
+    }
+
+    /** Copy the history of BRANCH in the gitlet directory REMOTE into
+     * this repository, going back at most DEPTH commits if DEPTH is
+     * positive. Returns the SHA1 code of the fetched head. */
+    private static String fetchLocal(File remote, String branch, int depth)
+            throws GitletException {
+        File branchFile = Utils.join(remote, "branches", branch + ".txt");
+        if (!branchFile.exists()) {
+            throw Utils.error("That remote does not have that branch.");
+        }
+        String head = Lock.shared(remote,
+                () -> Utils.readContentsAsString(branchFile).trim());
+        Predicate<String> known = Commit.shallowCommits().isEmpty()
+                ? Remote::has : id -> false;
+        List<Commit> missing = missingCommits(head, remote, known, depth);
+        Commit.addShallow(shallowBoundary(missing, Remote::has));
+
+        Set<String> blobs = new LinkedHashSet<>();
+        for (Commit c : missing) {
+            for (String filename : c.getFileSet()) {
+                String code = c.fileCode(filename);
+                if (!has(code)) {
+                    blobs.add(code);
+                }
+            }
+        }
+        copyAll(blobs, Utils.join(remote, "objects"));
+        for (Commit c : missing) {
+            copyObject(c.sha1(), Utils.join(remote, "objects"));
+        }
+        return head;
+    }
+
+    /** Return the commits reachable from HEAD in the gitlet directory
+     * REMOTE for which KNOWN is false, every commit coming after its
+     * parents. The walk stops at the first known commit of each line of
+     * history. */
+    static List<Commit> missingCommits(String head, File remote,
+                                       Predicate<String> known) {
+        return missingCommits(head, remote, known, 0);
+    }
+
+    /** Return the commits reachable from HEAD in the gitlet directory
+     * REMOTE for which KNOWN is false, every commit coming after its
+     * parents. The walk stops at the first known commit of each line of
+     * history, at the commits where REMOTE's own history was cut short,
+     * and if DEPTH is positive, after DEPTH commits. */
+    static List<Commit> missingCommits(String head, File remote,
+                                       Predicate<String> known,
+                                       int depth) {
+        Set<String> cut =
+                Commit.readShallow(Utils.join(remote, "shallow.txt"));
+        HashMap<String, Commit> found = new HashMap<>();
+        List<String> level = new ArrayList<>();
+        if (!known.test(head)) {
+            level.add(head);
+        }
+        for (int d = 0; !level.isEmpty() && (depth <= 0 || d < depth);
+             d += 1) {
+            List<String> next = new ArrayList<>();
+            for (String id : level) {
+                if (found.containsKey(id)) {
+                    continue;
+                }
+                Commit c = Commit.remoteGetCommit(id, remote.getPath());
+                found.put(id, c);
+                for (String p : parents(c, cut)) {
+                    if (!known.test(p) && !found.containsKey(p)
+                            && Utils.join(remote, "objects", p + ".txt")
+                                    .exists()) {
+                        next.add(p);
+                    }
+                }
+            }
+            level = next;
+        }
+
+        List<Commit> order = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        if (found.containsKey(head)) {
+            stack.push(head);
+        }
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            boolean ready = true;
+            for (String p : parents(found.get(id), cut)) {
+                if (found.containsKey(p) && !done.contains(p)) {
+                    stack.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                if (done.add(id)) {
+                    order.add(found.get(id));
+                }
+            }
+        }
+        return order;
+    }
+
+    /** Return the parents of the commit C, read from a repository whose
+     * shallow commits are CUT, as that repository knows them. */
+    private static List<String> parents(Commit c, Set<String> cut) {
+        if (cut.contains(c.sha1())) {
+            return new ArrayList<>();
+        }
+        return c.parentCodes();
+    }
+
+    /** Return the SHA1 codes of the commits of IDS that the gitlet
+     * directory REPO has, together with every ancestor of theirs there:
+     * the history that a peer holding IDS already has. */
+    static Set<String> ancestry(Collection<String> ids, File repo) {
+        Set<String> cut =
+                Commit.readShallow(Utils.join(repo, "shallow.txt"));
+        Set<String> result = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>(ids);
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (result.contains(id)
+                    || !Utils.join(repo, "objects", id + ".txt").exists()) {
+                continue;
+            }
+            result.add(id);
+            stack.addAll(parents(Commit.remoteGetCommit(id, repo.getPath()),
+                    cut));
+        }
+        return result;
+    }
+
+    /** Return the codes of the blobs tracked, in the gitlet directory
+     * REPO, by the commits of HAVES and by the parents of COMMITS that
+     * are in KNOWN. A peer holding that history has them all. */
+    static Set<String> knownBlobs(Collection<String> haves,
+                                  List<Commit> commits, Set<String> known,
+                                  File repo) {
+        Set<String> ids = new HashSet<>();
+        for (String id : haves) {
+            if (known.contains(id)) {
+                ids.add(id);
+            }
+        }
+        for (Commit c : commits) {
+            for (String p : c.parentCodes()) {
+                if (known.contains(p)) {
+                    ids.add(p);
+                }
+            }
+        }
+        Set<String> blobs = new HashSet<>();
+        for (String id : ids) {
+            Commit c = Commit.remoteGetCommit(id, repo.getPath());
+            for (String filename : c.getFileSet()) {
+                blobs.add(c.fileCode(filename));
+            }
+        }
+        return blobs;
+    }
+
+    /** Return the SHA1 codes of the commits in COMMITS that record a
+     * parent which is neither in COMMITS nor KNOWN. Those are the
+     * commits where a shallow history ends. */
+    static List<String> shallowBoundary(List<Commit> commits,
+                                        Predicate<String> known) {
+        Set<String> ids = new HashSet<>();
+        for (Commit c : commits) {
+            ids.add(c.sha1());
+        }
+        List<String> boundary = new ArrayList<>();
+        for (Commit c : commits) {
+            for (String p : c.parentCodes()) {
+                if (!ids.contains(p) && !known.test(p)) {
+                    boundary.add(c.sha1());
+                    break;
+                }
+            }
+        }
+        return boundary;
+    }
+
+    /** Copy every object in IDS from the objects directory FROM into this
+     * repository, using at most COPY_THREADS threads. */
+    static void copyAll(Set<String> ids, File from) throws GitletException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (String id : ids) {
+            tasks.add(() -> {
+                copyObject(id, from);
+                return null;
+            });
+        }
+        Utils.runAll(tasks, COPY_THREADS);
+    }
+
+    /** Copy the object ID from the objects directory FROM into this
+     * repository, unless it is already here. The object only appears
+     * under its final name once it has been written completely. */
+    static void copyObject(String id, File from) throws GitletException {
+        File dest = Utils.join(Repo.objects(), id + ".txt");
+        if (dest.exists()) {
+            return;
+        }
+        Repo.createDir(Repo.tmp());
+        try {
+            File tmp = File.createTempFile(id, ".tmp", Repo.tmp());
+            Files.copy(Utils.join(from, id + ".txt").toPath(), tmp.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp.toPath(), dest.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Could not copy object %s.", id);
+        }
+    }
+
+    /** Returns true if the object ID is present in this repository. */
+    static boolean has(String id) {
+        return Utils.join(Repo.objects(), id + ".txt").exists();
+    }
+}
@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Detects files that were renamed between two sets of files, possibly
+ * with edits. Each removed or added file is summed up by a MinHash
+ * signature of its lines, so the share of equal signature entries of
+ * two files estimates how many lines they have in common. Only files
+ * whose signatures agree on a whole band of entries are compared, so
+ * the work grows with the number of files rather than with the number
+ * of pairs of them.
+ * @author AMK Somani
+ */
+class Renames {
+
+    /** Number of entries in a signature. */
+    static final int SIGNATURE = 32;
+
+    /** Number of entries in each band used to find candidate pairs. */
+    static final int BAND = 4;
+
+    /** Smallest estimated share of common lines for a rename. */
+    static final double THRESHOLD = 0.5;
+
+    /** Most candidates compared with any one removed file. */
+    static final int PER_FILE = 32;
+
+    /** Most candidate pairs compared in one detection, unless set by the
+     * GITLET_RENAME_LIMIT environment variable. */
+    static final int DEFAULT_LIMIT = 100000;
+
+    /** Return the renames from the files FROM to the files TO, each a
+     * mapping from file name to blob SHA1 code, as a mapping from old
+     * name to new name. Only files in FROM but not TO can be renamed to
+     * files in TO but not FROM. */
+    static Map<String, String> detect(Map<String, String> from,
+                                      Map<String, String> to) {
+        List<String> removed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        for (String name : from.keySet()) {
+            if (!to.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+        for (String name : to.keySet()) {
+            if (!from.containsKey(name)) {
+                added.add(name);
+            }
+        }
+        Map<String, String> result = new TreeMap<>();
+        if (removed.isEmpty() || added.isEmpty()) {
+            return result;
+        }
+
+        HashMap<String, long[]> signatures = new HashMap<>();
+        HashMap<Band, List<String>> buckets = new HashMap<>();
+        for (String name : added) {
+            long[] sig = signature(Blob.contentsOf(to.get(name)));
+            if (sig != null) {
+                signatures.put(name, sig);
+                for (int b = 0; b < SIGNATURE; b += BAND) {
+                    buckets.computeIfAbsent(new Band(sig, b),
+                            k -> new ArrayList<>()).add(name);
+                }
+            }
+        }
+
+        List<Pair> pairs = new ArrayList<>();
+        int budget = limit();
+        for (String name : removed) {
+            long[] sig = signature(Blob.contentsOf(from.get(name)));
+            if (sig == null) {
+                continue;
+            }
+            HashSet<String> seen = new HashSet<>();
+            for (int b = 0; b < SIGNATURE; b += BAND) {
+                List<String> bucket = buckets.get(new Band(sig, b));
+                if (bucket == null) {
+                    continue;
+                }
+                for (String other : bucket) {
+                    if (seen.size() >= PER_FILE || budget <= 0) {
+                        break;
+                    }
+                    if (seen.add(other)) {
+                        budget -= 1;
+                        double score =
+                                similarity(sig, signatures.get(other));
+                        if (score >= THRESHOLD) {
+                            pairs.add(new Pair(name, other, score));
+                        }
+                    }
+                }
+            }
+        }
+
+        pairs.sort((x, y) -> Double.compare(y.score, x.score));
+        HashSet<String> taken = new HashSet<>();
+        for (Pair p : pairs) {
+            if (!result.containsKey(p.from) && taken.add(p.to)) {
+                result.put(p.from, p.to);
+            }
+        }
+        return result;
+    }
+
+    /** Return the estimated share of lines two files with signatures A
+     * and B have in common. */
+    static double similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SIGNATURE; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return (double) same / SIGNATURE;
+    }
+
+    /** Return the MinHash signature of the lines of CONTENTS, or null if
+     * it is empty. Entry I is the least value of the I-th hash function
+     * over the file's lines. */
+    static long[] signature(byte[] contents) {
+        if (contents.length == 0) {
+            return null;
+        }
+        long[] sig = new long[SIGNATURE];
+        Arrays.fill(sig, Long.MAX_VALUE);
+        long h = FNV_BASIS;
+        for (int i = 0; i <= contents.length; i += 1) {
+            if (i == contents.length || contents[i] == '\n') {
+                for (int k = 0; k < SIGNATURE; k += 1) {
+                    long v = mix(h + SEEDS[k]);
+                    if (v < sig[k]) {
+                        sig[k] = v;
+                    }
+                }
+                h = FNV_BASIS;
+                if (i + 1 == contents.length) {
+                    break;
+                }
+            } else {
+                h = (h ^ (contents[i] & 0xff)) * FNV_PRIME;
+            }
+        }
+        return sig;
+    }
+
+    /** Return the most candidate pairs to compare. */
+    private static int limit() {
+        String value = System.getenv("GITLET_RENAME_LIMIT");
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException excp) {
+                return DEFAULT_LIMIT;
+            }
+        }
+        return DEFAULT_LIMIT;
+    }
+
+    /** Return X with its bits well mixed (the splitmix64 finalizer). */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** FNV-1a hash parameters used to hash each line. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L,
+            FNV_PRIME = 0x100000001b3L;
+
+    /** Values distinguishing the hash functions of a signature. */
+    private static final long[] SEEDS = new long[SIGNATURE];
+
+    static {
+        for (int k = 0; k < SIGNATURE; k += 1) {
+            SEEDS[k] = mix(k + 1) | 1;
+        }
+    }
+
+    /** One band of a signature, used as a hash key. */
+    private static final class Band {
+
+        /** Entries START up to START + BAND of signature SIG. */
+        Band(long[] sig, int start) {
+            this.sig = sig;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Band)) {
+                return false;
+            }
+            Band b = (Band) o;
+            return start == b.start && Arrays.equals(sig, start,
+                    start + BAND, b.sig, b.start, b.start + BAND);
+        }
+
+        @Override
+        public int hashCode() {
+            long h = start;
+            for (int i = start; i < start + BAND; i += 1) {
+                h = h * 31 + sig[i];
+            }
+            return Long.hashCode(h);
+        }
+
+        /** The signature. */
+        private final long[] sig;
+
+        /** The first entry of the band. */
+        private final int start;
+    }
+
+    /** A possible rename from FROM to TO with similarity SCORE. */
+    private static final class Pair {
+
+        /** A rename of FROM to TO whose files are SCORE alike. */
+        Pair(String from, String to, double score) {
+            this.from = from;
+            this.to = to;
+            this.score = score;
+        }
+
+        /** Old name. */
+        private final String from;
+
+        /** New name. */
+        private final String to;
+
+        /** Estimated share of common lines. */
+        private final double score;
+    }
+}
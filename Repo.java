@@ -2,8 +2,13 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
-import java.time.Instant;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** A class that acts as a correspondent to the gitlet directory,
  * handling and dispatching jobs to different classes, and throwing errors
@@ -12,29 +17,77 @@ import java.util.List;
  */
 public class Repo {
 
-    /** Current Working Directory For Gitlet Repo. */
-    public static final File CWD = new File(".gitlet");
+    /** Return the gitlet directory of the current repository. */
+    public static File gitlet() {
+        return Repository.current().gitlet();
+    }
+
+    /** Return the working directory of the current repository. */
+    public static File root() {
+        return Repository.current().root();
+    }
 
-    /** File for storing the staging area. */
-    public static final File INDEX = Utils.join(CWD, "index.txt");
+    /** Return the file NAME in the working directory of the current
+     * repository. */
+    public static File working(String name) {
+        return Utils.join(root(), name);
+    }
 
-    /** Directory for storing blobs and commits.  */
-    public static final File OBJECTS = Utils.join(CWD, "objects");
+    /** Return the file for storing the staging area. */
+    public static File index() {
+        return Utils.join(gitlet(), "index.txt");
+    }
 
-    /** File for storing name of currently active head branch. */
-    public static final File HEAD = Utils.join(CWD, "head.txt");
+    /** Return the directory for storing blobs and commits.  */
+    public static File objects() {
+        return Utils.join(gitlet(), "objects");
+    }
 
-    /** Folder for storing pointers to most recent commits of branches. */
-    public static final File BRANCHES = Utils.join(CWD, "branches");
+    /** Return the file for storing name of currently active head
+     * branch. */
+    public static File head() {
+        return Utils.join(gitlet(), "head.txt");
+    }
 
-    /** Folder for storing remotes.*/
-    public static final File REMOTES = Utils.join(CWD, "remote");
+    /** Return the folder for storing pointers to most recent commits of
+     * branches. */
+    public static File branches() {
+        return Utils.join(gitlet(), "branches");
+    }
+
+    /** Return the folder for storing remotes.*/
+    public static File remotes() {
+        return Utils.join(gitlet(), "remote");
+    }
+
+    /** Return the file listing the commits whose parents were left out
+     * by a shallow fetch. */
+    public static File shallow() {
+        return Utils.join(gitlet(), "shallow.txt");
+    }
+
+    /** Return the file listing the sparse-checkout patterns, if any. */
+    public static File sparse() {
+        return Utils.join(gitlet(), "sparse-checkout.txt");
+    }
+
+    /** Return the folder for objects that are still being written. */
+    public static File tmp() {
+        return Utils.join(gitlet(), "tmp");
+    }
 
     /** A repository that takes in arguments and performs
-     * actions on the corresponding gitlet repository. ARGS is the
-     * arguments passed alongside gitlet call.
+     * actions on the corresponding gitlet repository, that of the
+     * working directory. ARGS is the arguments passed alongside gitlet
+     * call. Each command is one call on a Repository, which takes the
+     * lock the command needs.
      */
     public Repo(String[] args) {
+        dispatch(args);
+    }
+
+    /** Perform the command in ARGS. */
+    private void dispatch(String[] args) {
         String action = args[0];
         switch (action) {
         case "init":
@@ -64,6 +117,9 @@ public class Repo {
         case "status" :
             handleStatus(args);
             break;
+        case "diff":
+            handleDiff(args);
+            break;
         case "branch":
             handleBranch(args);
             break;
@@ -88,6 +144,30 @@ public class Repo {
         case "fetch":
             handleFetch(args);
             break;
+        case "pull":
+            handlePull(args);
+            break;
+        case "serve":
+            handleServe(args);
+            break;
+        case "sparse-checkout":
+            handleSparseCheckout(args);
+            break;
+        case "gc":
+            handleGc(args);
+            break;
+        case "fsck":
+            handleFsck(args);
+            break;
+        case "blame":
+            handleBlame(args);
+            break;
+        case "migrate":
+            handleMigrate(args);
+            break;
+        case "count-objects":
+            handleCountObjects(args);
+            break;
         default:
             throw Utils.error(
                     "No command with that name exists.");
@@ -101,37 +181,37 @@ public class Repo {
      */
     private void handleInit(String[] args) throws GitletException {
         checkForm(args, 1);
-        if (initialized()) {
-            throw Utils.error(
-                    "A Gitlet version-control system already "
-                            + "exists in the current directory.");
-        } else {
-            makeGitlet();
-            Branch master = new Branch("master");
-            master.setHead();
-            Commit.create("initial commit", 0);
-        }
+        Repository.init(new File("."));
     }
 
     /** Handles a request to add a file to gitlet. If the form
      * of ARGS is incorrect or gitlet is not initialized, throws error.
-     * Otherwise, blobs the file to the objects repo.
+     * Otherwise, blobs the file to the objects repo, or every file in
+     * the working directory if it is ".".
      */
     private void handleAdd(String[] args) throws GitletException {
         checkForm(args, 2);
-        checkInitialized();
-        Stage.stage(args[1]);
+        if (args[1].equals(".")) {
+            repository().addAll();
+        } else {
+            repository().add(args[1]);
+        }
     }
 
     /** Handles a request to commit the currently staged files
-     * with message from ARGS.
+     * with message from ARGS, first staging every changed tracked file
+     * if the message follows -a.
      * */
     private void handleCommit(String[] args) throws GitletException {
+        if (args.length == 3 && args[1].equals("-a")
+                && !args[2].equals("")) {
+            repository().commitAll(args[2]);
+            return;
+        }
         if (args.length != 2 || args[1].equals("")) {
             throw Utils.error("Please enter a commit message.");
         }
-        checkInitialized();
-        Commit.create(args[1], Instant.now().getEpochSecond());
+        repository().commit(args[1]);
     }
 
     /** Handles a request to remove a certain file form ARGS from
@@ -142,8 +222,7 @@ public class Repo {
      */
     private void handleRemove(String[] args) {
         checkForm(args, 2);
-        checkInitialized();
-        Stage.antistage(args[1]);
+        repository().remove(args[1]);
     }
 
     /** Handles a request to output the log from ARGS, chasing
@@ -151,15 +230,17 @@ public class Repo {
      */
     private void handleLog(String[] args) {
         checkForm(args, 1);
-        checkInitialized();
-        Commit.log();
+        for (Commit c : repository().log()) {
+            c.display();
+        }
     }
 
     /** Handles a request to output the global log from ARGS. */
     private void handleGlobalLog(String[] args) {
         checkForm(args, 1);
-        checkInitialized();
-        Commit.globalLog();
+        for (Commit c : repository().globalLog()) {
+            c.display();
+        }
     }
 
     /** Handles a request to find all the commit ids with the
@@ -167,16 +248,46 @@ public class Repo {
      */
     private void handleFind(String[] args) {
         checkForm(args, 2);
-        checkInitialized();
-        Commit.find(args[1]);
+        List<String> found = repository().find(args[1]);
+        if (found.isEmpty()) {
+            throw Utils.error("Found no commit with that message");
+        }
+        for (String id : found) {
+            Utils.message("%s", id);
+        }
     }
 
     /** Handles a request to display the current status of
      * the repo from ARGS. */
     private void handleStatus(String[] args) {
         checkForm(args, 1);
-        checkInitialized();
-        Repo.display();
+        Utils.message(repository().status());
+    }
+
+    /** Handles a request from ARGS to show the unstaged changes, the
+     * staged changes with --cached, or the changes between two commits,
+     * in full or as a summary with --stat. */
+    private void handleDiff(String[] args) throws GitletException {
+        Repository repo = repository();
+        boolean stat = false, cached = false;
+        List<String> commits = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--stat")) {
+                stat = true;
+            } else if (args[i].equals("--cached")) {
+                cached = true;
+            } else {
+                commits.add(args[i]);
+            }
+        }
+        if (commits.isEmpty()) {
+            repo.diff(cached, stat, Changes.stdout());
+        } else if (commits.size() == 2 && !cached) {
+            repo.diff(commits.get(0), commits.get(1), stat,
+                    Changes.stdout());
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
     }
 
     /** Handles a request to checkout the given file with the
@@ -185,16 +296,16 @@ public class Repo {
      */
     private void handleCheckout(String[] args) {
         if (args.length == 2) {
-            handleBranchCheckout(args[1]);
+            repository().checkoutBranch(args[1]);
         } else if (args.length == 3) {
             if (args[1].equals("--")) {
-                handleFileCheckout(args[2]);
+                repository().checkoutFile(args[2]);
             } else {
                 checkForm(args, 2);
             }
         } else if (args.length == 4) {
             if (args[2].equals("--")) {
-                handleFileCheckout(args[3], args[1]);
+                repository().checkoutFile(args[1], args[3]);
             } else {
                 checkForm(args, 3);
             }
@@ -209,9 +320,7 @@ public class Repo {
     private void handleBranch(String[] args)
             throws GitletException {
         checkForm(args, 2);
-        checkInitialized();
-        Branch.checkDouble(args[1]);
-        Branch b = new Branch(args[1]);
+        repository().branch(args[1]);
     }
 
     /** Handles a request to remove a branch from ARGS,
@@ -219,10 +328,7 @@ public class Repo {
     private void handleRmBranch(String[] args)
             throws GitletException {
         checkForm(args, 2);
-        checkInitialized();
-        Branch.checkExistsRm(args[1]);
-        Branch.checkIsActiveRm(args[1]);
-        Branch.delete(args[1]);
+        repository().removeBranch(args[1]);
     }
 
     /** Checkout all the files from a certain commit
@@ -233,215 +339,196 @@ public class Repo {
     private void handleReset(String[] args)
             throws GitletException {
         checkForm(args, 2);
-        checkInitialized();
-        String id = Commit.fullCommit(args[1]);
-        Commit.checkExists(id);
-        Commit.checkUntracked(id);
-        Commit.reset(id);
-        Stage.clearStage();
-        Branch.updateBranch(Branch.head(), id);
+        repository().reset(args[1]);
     }
 
     /** Merge another branch from ARGS into the current branch. */
     public void handleMerge(String[] args) throws GitletException {
         checkForm(args, 2);
-        checkInitialized();
-        Stage.checkStaged();
-        Branch.checkExistsRm(args[1]);
-        if (Branch.head().equals(args[1])) {
-            throw Utils.error(
-                    "Cannot merge a branch with itself.");
-        }
-        Branch.checkUntracked(args[1]);
-
-        Branch.merge(args[1]);
+        repository().merge(args[1]);
     }
 
-    /** Handles the display for all the current states of
-     * the gitlet directory.
-     * */
-    private static void display() {
-        String branchdisplay = "=== Branches ===\n";
-        branchdisplay += Branch.display();
-
-        String stageDisplay = "\n=== Staged Files ===\n";
-        stageDisplay += Stage.stageDisplay();
-
-        String removeDisplay = "\n=== Removed Files ===\n";
-        removeDisplay += Stage.removeDisplay();
-
-        String mods =
-                "\n=== Modifications Not Staged For Commit ===\n";
-        mods += Commit.modified();
-
-        String untracked = "\n=== Untracked Files ===\n";
-        untracked += Commit.getUntracked();
-
-        String display = branchdisplay + stageDisplay
-                + removeDisplay + mods + untracked;
-        Utils.message(display);
+    /** Remotely add to a given remote directory from ARGS. */
+    private void handleRemoteAdd(String[] args) throws GitletException {
+        checkForm(args, 3);
+        repository().addRemote(args[1], args[2]);
     }
 
-    /** Handle a request to check out a file FILENAME out
-     * of the most recent commit. */
-    private void handleFileCheckout(String filename) {
-        handleFileCheckout(filename, Commit.currCommit());
+    /** Remove a remote repository from ARGS. */
+    private void handleRemoteRemove(String[] args) throws GitletException {
+        checkForm(args, 2);
+        repository().removeRemote(args[1]);
     }
 
-    /** Handle a request to check out a file FILENAME out of
-     * the commit with code COMMIT. */
-    private void handleFileCheckout(String filename, String commit)
-            throws GitletException {
-        checkInitialized();
-        commit = Commit.fullCommit(commit);
-        Commit.checkExists(commit);
+    /** Handle a push command on the given remote repo from ARGS. */
+    private void handlePush(String[] args) throws GitletException {
+        checkForm(args, 3);
+        repository().push(args[1], args[2]);
+    }
 
-        Commit c = Commit.getCommit(commit);
-        if (!c.containsFile(filename)) {
-            throw Utils.error(
-                    "File does not exist in that commit.");
-        }
-        c.checkout(filename);
-        Stage.removeFromStage(filename);
+    /** Handles a request to fetch the branch of a remote from ARGS
+     * into the local branch remote/branch. */
+    private void handleFetch(String[] args) throws GitletException {
+        int depth = depth(args, 3);
+        repository().fetch(args[1], args[2], depth);
     }
 
-    /** Handle a request to check out a branch named BRANCH. */
-    private void handleBranchCheckout(String branch)
-            throws GitletException {
-        checkInitialized();
-        Branch.checkExists(branch);
-        Branch.checkIsActive(branch);
-        Branch.checkUntracked(branch);
-        Branch.checkout(branch);
-        Stage.clearStage();
-        Branch.setHeadBranch(branch);
+    /** Handles a request to fetch the branch of a remote from ARGS
+     * and merge it into the current branch. */
+    private void handlePull(String[] args) throws GitletException {
+        int depth = depth(args, 3);
+        repository().pull(args[1], args[2], depth);
     }
 
-    /** Remotely add to a given remote directory from ARGS. */
-    private void handleRemoteAdd(String[] args) throws GitletException {
-        checkForm(args, 3);
-        String remoteName = args[1];
-        String path = args[2];
-        File f = Utils.join(REMOTES, remoteName + ".txt");
-        if (f.exists()) {
-            throw Utils.error("A remote with that name already exists.");
-        } else {
-            createFile(f);
-            Utils.writeContents(f, path);
+    /** Return the depth N given by a trailing "--depth N" after the
+     * first FORM arguments of ARGS, or 0 if there is none. Throws an
+     * error if ARGS has any other form. */
+    private int depth(String[] args, int form) throws GitletException {
+        if (args.length == form) {
+            return 0;
         }
+        if (args.length != form + 2 || !args[form].equals("--depth")) {
+            throw Utils.error("Incorrect operands.");
+        }
+        try {
+            int depth = Integer.parseInt(args[form + 1]);
+            if (depth > 0) {
+                return depth;
+            }
+        } catch (NumberFormatException excp) {
+            /* Falls through to the error below. */
+        }
+        throw Utils.error("Incorrect operands.");
     }
 
-    /** Remove a remote repository from ARGS. */
-    private void handleRemoteRemove(String[] args) throws GitletException {
+    /** Handles a request to serve this repository to remotes on the
+     * loopback port given in ARGS. Does not return. */
+    private void handleServe(String[] args) throws GitletException {
         checkForm(args, 2);
-        String remoteName = args[1];
-        File f = Utils.join(REMOTES, remoteName + ".txt");
-        if (!f.exists()) {
-            throw Utils.error("A remote with that name does not exist.");
-        } else {
-            f.delete();
+        Repository repo = repository();
+        int port;
+        try {
+            port = Integer.parseInt(args[1]);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Incorrect operands.");
+        }
+        try {
+            Server server = repo.serve(port);
+            Utils.message("Serving on %s", server.location());
+            server.serve();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot listen on port %d.", port);
         }
     }
 
-    /** Handle a push command on the given remote repo from ARGS. */
-    private void handlePush(String[] args) throws GitletException {
-        checkForm(args, 3);
-        File f = Utils.join(REMOTES, args[1] + ".txt");
-        if (!f.exists()) {
-            throw Utils.error("Remote directory not found.");
+    /** Handles a sparse-checkout command from ARGS: "set" followed by
+     * patterns chooses the files kept in the working directory, "list"
+     * prints the patterns and "disable" keeps every file again. */
+    private void handleSparseCheckout(String[] args)
+            throws GitletException {
+        Repository repo = repository();
+        if (args.length < 2) {
+            throw Utils.error("Incorrect operands.");
         }
-        File remote = Utils.join(Utils.readContentsAsString(f));
-        if (!remote.exists()) {
-            throw Utils.error("Remote directory not found.");
+        switch (args[1]) {
+        case "set":
+            if (args.length < 3) {
+                throw Utils.error("Incorrect operands.");
+            }
+            repo.setSparsePatterns(
+                    Arrays.asList(args).subList(2, args.length));
+            break;
+        case "list":
+            checkForm(args, 2);
+            for (String p : repo.sparsePatterns()) {
+                Utils.message(p);
+            }
+            break;
+        case "disable":
+            checkForm(args, 2);
+            repo.setSparsePatterns(new ArrayList<>());
+            break;
+        default:
+            throw Utils.error("Incorrect operands.");
         }
-        Commit commit = Branch.getRemoteHead(args[2], f);
-        if (commit == null) {
-            createAndAppend(args[2],
-                    Utils.join(Utils.readContentsAsString(f)));
+    }
+
+    /** Handles a request from ARGS to count the unreachable objects
+     * and, with --prune, delete those older than two weeks, or with
+     * --prune=now, all of them. */
+    private void handleGc(String[] args) throws GitletException {
+        boolean prune = false;
+        long grace = Gc.GRACE;
+        if (args.length == 2 && args[1].equals("--prune")) {
+            prune = true;
+        } else if (args.length == 2 && args[1].equals("--prune=now")) {
+            prune = true;
+            grace = 0;
         } else {
-            Commit head = Commit.getCommit(Branch.getBranchCode(Branch.head()));
-            List<Commit> history = head.getHistory();
-            if (!history.contains(commit)) {
-                throw Utils.error(
-                        "Please pull down remote changes before pushing.");
-            }
-            String lastSHA = append(history, commit,
-                            Utils.join(Utils.readContentsAsString(f)));
-            Branch.setRemoteHead(f, args[2], lastSHA);
+            checkForm(args, 1);
+        }
+        Gc gc = repository().gc(prune, grace);
+        Utils.message("Reachable objects: %d", gc.reachable());
+        Utils.message("Unreachable objects: %d", gc.unreachable());
+        if (prune) {
+            Utils.message("Pruned objects: %d (%d bytes)", gc.pruned(),
+                    gc.freed());
         }
     }
 
-    /** Handles a request to fetch the head of a given file
-     * from ARGS. */
-    private void handleFetch(String[] args) throws GitletException {
-        checkForm(args, 3);
-        File f = Utils.join(REMOTES, args[1] + ".txt");
-        if (!f.exists()) {
-            throw Utils.error("Remote directory not found.");
+    /** Handles a request from ARGS to check the objects, printing the
+     * corrupt, missing and dangling ones. */
+    private void handleFsck(String[] args) throws GitletException {
+        checkForm(args, 1);
+        Fsck fsck = repository().fsck();
+        for (String id : fsck.corrupt()) {
+            Utils.message("corrupt %s", id);
         }
-        File remote = Utils.join(Utils.readContentsAsString(f));
-        if (!remote.exists()) {
-            throw Utils.error("Remote directory not found.");
+        for (Map.Entry<String, String> e : fsck.missing().entrySet()) {
+            Utils.message("missing %s (referenced by %s)", e.getKey(),
+                    e.getValue());
         }
-        File branch = Utils.join(remote, "branches", args[2] + ".txt");
-        if (!branch.exists()) {
-            throw Utils.error("That remote does not have that branch.");
+        for (Map.Entry<String, String> e : fsck.dangling().entrySet()) {
+            Utils.message("dangling %s %s", e.getValue(), e.getKey());
         }
+        Utils.message("Checked %d objects.", fsck.checked());
     }
 
-    /** Create a branch BRANCHNAME, append all the files in current head's
-     * history to REPO and then update the head of that file to the last commit.
-     */
-    private void createAndAppend(String branchName, File repo) {
-        File branchFile = Utils.join(repo, "branches", branchName + ".txt");
-        createFile(branchFile);
-        Commit head = Commit.getCommit(Branch.head());
-        List<Commit> history = head.getHistory();
-        File objects = Utils.join(repo, "objects");
-        Commit last = null;
-        for (int i = 0; i < history.size(); i += 1) {
-            Commit curr = history.get(i);
-            String sha = curr.sha1();
-            File f = Utils.join(objects, sha + ".txt");
-            createFile(f);
-            Utils.writeObject(f, curr);
-            last = curr;
+    /** Handles a request from ARGS to show, before each line of a file,
+     * the commit that last changed it and that commit's date. */
+    private void handleBlame(String[] args) throws GitletException {
+        checkForm(args, 2);
+        Repository repo = repository();
+        Blame blame = repo.blame(args[1]);
+        SimpleDateFormat form = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        Map<String, String> dates = new HashMap<>();
+        for (int i = 0; i < blame.size(); i += 1) {
+            String id = blame.commit(i);
+            String date = dates.computeIfAbsent(id, k -> form.format(
+                    new Date(Commit.getCommit(k).getTime() * 1000)));
+            Utils.message("%s (%s %4d) %s", id.substring(0, 8), date,
+                    i + 1, blame.line(i));
         }
-        Utils.writeContents(branchFile, last.sha1());
     }
 
-    /** Returns after Append all the commits made after COMMIT in HISTORY
-     * to the gitlet repository REPO. Returns the SHACode of the
-     * last committed object.
-     */
-    private String append(List<Commit> history, Commit commit, File repo) {
-        File objects = Utils.join(repo, "objects");
-        Commit last = null;
-        for (int i = 0; i < history.size(); i += 1) {
-            Commit curr = history.get(i);
-            if (curr.getTime() > commit.getTime()) {
-                String sha = curr.sha1();
-                File f = Utils.join(objects, sha + ".txt");
-                createFile(f);
-                Utils.writeObject(f, curr);
-                last = curr;
-            }
-        }
-        if (last != null) {
-            return last.sha1();
-        } else {
-            return "unreachable";
-        }
+    /** Handles a request from ARGS to rename the blobs to the codes of
+     * their contents. */
+    private void handleMigrate(String[] args) throws GitletException {
+        checkForm(args, 1);
+        Migrate m = repository().migrate();
+        Utils.message("Blobs: %d, now %d", m.blobsBefore(), m.blobsAfter());
+        Utils.message("Commits rewritten: %d", m.commitsRewritten());
     }
 
-    /** Making the gitlet directory structure. */
-    private void makeGitlet() {
-        createDir(CWD);
-        createDir(OBJECTS);
-        createDir(BRANCHES);
-        createDir(REMOTES);
-        createFile(INDEX);
-        createFile(HEAD);
+    /** Handles a request from ARGS to count the objects. */
+    private void handleCountObjects(String[] args) throws GitletException {
+        checkForm(args, 1);
+        ObjectCount c = repository().countObjects();
+        Utils.message("commits: %d", c.commits());
+        Utils.message("blobs: %d", c.blobs());
+        Utils.message("size: %d bytes", c.bytes());
+        Utils.message("file versions: %d", c.versions());
+        Utils.message("versions sharing a blob: %d", c.deduplicated());
     }
 
     /** Creates a new file in the gitlet repo through given file FILE.
@@ -492,17 +579,10 @@ public class Repo {
         }
     }
 
-    /** Throws an error if the gitlet repo is not initialized. */
-    private void checkInitialized() throws GitletException {
-        if (!initialized()) {
-            throw Utils.error(
-                    "Not in an initialized Gitlet directory.");
-        }
-    }
-
-    /** Returns true if the gitlet repo is initialized. */
-    private boolean initialized() {
-        return CWD.exists();
+    /** Return the repository in the working directory, throwing an
+     * error if there is none. */
+    private Repository repository() throws GitletException {
+        return Repository.open(new File("."));
     }
 
 }
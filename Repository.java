@@ -0,0 +1,634 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/** A gitlet repository opened on a directory, for use by programs
+ * other than the command line. Each operation takes the repository's
+ * lock, shared for those that only read it and exclusive for the rest,
+ * so any number of threads, in this process or others, may use the
+ * same repository at once: readers run together and writers one at a
+ * time. Results are returned rather than printed; the few messages the
+ * commands themselves print, such as for a merge, still go to standard
+ * output.
+ *
+ * While an operation runs, its thread works in this repository: the
+ * files named by Repo, such as Repo.index(), are those of the
+ * repository current to the thread, which is the one in the process's
+ * working directory when none has been entered.
+ * @author AMK Somani
+ */
+public class Repository {
+
+    /** Most commits a repository keeps once read. */
+    static final int COMMITS = 4096;
+
+    /** The repository whose working directory is ROOT. */
+    private Repository(File root) {
+        this.root = root.getAbsoluteFile();
+        this.gitlet = Utils.join(this.root, ".gitlet");
+    }
+
+    /** Return a new repository in the directory ROOT, throwing an error
+     * if there already is one. The repository has the branch master
+     * with the initial commit. */
+    public static Repository init(File root) throws GitletException {
+        Repository r = new Repository(root);
+        if (r.gitlet.exists()) {
+            throw Utils.error("A Gitlet version-control system already "
+                    + "exists in the current directory.");
+        }
+        r.within(() -> {
+            Repo.createDir(Repo.gitlet());
+            Repo.createDir(Repo.objects());
+            Repo.createDir(Repo.branches());
+            Repo.createDir(Repo.remotes());
+            Repo.createFile(Repo.index());
+            Repo.createFile(Repo.head());
+            Branch master = new Branch("master");
+            master.setHead();
+            Commit.create("initial commit", 0);
+            return null;
+        });
+        return r;
+    }
+
+    /** Return the repository in the directory ROOT, throwing an error if
+     * there is none. */
+    public static Repository open(File root) throws GitletException {
+        Repository r = new Repository(root);
+        if (!r.gitlet.isDirectory()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        return r;
+    }
+
+    /** Return the working directory of this repository. */
+    public File root() {
+        return root;
+    }
+
+    /** Return the gitlet directory of this repository. */
+    public File gitlet() {
+        return gitlet;
+    }
+
+    /** Stage the working file FILENAME for addition. */
+    public void add(String filename) throws GitletException {
+        write(() -> Stage.stage(filename));
+    }
+
+    /** Stage every file of the working directory for addition. The
+     * files are read, hashed and saved by a pipeline. */
+    public void addAll() throws GitletException {
+        write(() -> {
+            List<String> names = new ArrayList<>();
+            for (String name : Utils.plainFilenamesIn(Repo.root())) {
+                if (!Repo.neverConsider(name) && Sparse.includes(name)) {
+                    names.add(name);
+                }
+            }
+            return Stage.stageAll(names);
+        });
+    }
+
+    /** Stage the file FILENAME for removal, deleting it from the working
+     * directory if it is tracked. */
+    public void remove(String filename) throws GitletException {
+        write(() -> Stage.antistage(filename));
+    }
+
+    /** Commit the staged files with the message MSG and return the SHA1
+     * code of the new commit. */
+    public String commit(String msg) throws GitletException {
+        return write(() -> Commit.create(msg,
+                Instant.now().getEpochSecond()).sha1());
+    }
+
+    /** Stage every tracked file that was changed or deleted and then
+     * commit with the log message MSG, returning the new commit's SHA1
+     * code. The changed files are read, hashed and saved by a
+     * pipeline. */
+    public String commitAll(String msg) throws GitletException {
+        return write(() -> {
+            List<String> present = new ArrayList<>();
+            for (String name : Commit.currCommitObj().getFileSet()) {
+                if (!Sparse.includes(name)) {
+                    continue;
+                } else if (Repo.working(name).isFile()) {
+                    present.add(name);
+                } else {
+                    Stage.antistage(name);
+                }
+            }
+            Stage.stageAll(present);
+            return Commit.create(msg,
+                    Instant.now().getEpochSecond()).sha1();
+        });
+    }
+
+    /** Return the commits reached through the first parents of the head
+     * of the current branch, newest first. */
+    public List<Commit> log() {
+        return read(Commit::log);
+    }
+
+    /** Return every commit in this repository. */
+    public List<Commit> globalLog() {
+        return read(Commit::globalLog);
+    }
+
+    /** Return the SHA1 codes of the commits whose message is MSG. */
+    public List<String> find(String msg) {
+        return read(() -> Commit.find(msg));
+    }
+
+    /** Return the SHA1 code of the latest common ancestor of the heads of
+     * the branches CURRENT and GIVEN, or "" if they share no history. */
+    public String mergeBase(String current, String given) {
+        return read(() -> Commit.mergeBase(Branch.getBranchCode(current),
+                Branch.getBranchCode(given)));
+    }
+
+    /** Return the status of this repository as the status command
+     * shows it. */
+    public String status() {
+        return read(() -> "=== Branches ===\n" + Branch.display()
+                + "\n=== Staged Files ===\n" + Stage.stageDisplay()
+                + "\n=== Removed Files ===\n" + Stage.removeDisplay()
+                + "\n=== Modifications Not Staged For Commit ===\n"
+                + Commit.modified()
+                + "\n=== Untracked Files ===\n" + Commit.getUntracked());
+    }
+
+    /** Write to OUT the changes in the working directory that are not
+     * staged, or those staged if CACHED, as a summary if STAT. */
+    public void diff(boolean cached, boolean stat, OutputStream out)
+            throws GitletException {
+        read(() -> show(cached ? Changes.staged() : Changes.unstaged(),
+                stat, out));
+    }
+
+    /** Write to OUT the changes from the commit FROM to the commit TO,
+     * either of which may be abbreviated, as a summary if STAT. */
+    public void diff(String from, String to, boolean stat, OutputStream out)
+            throws GitletException {
+        read(() -> {
+            String first = Commit.fullCommit(from);
+            String second = Commit.fullCommit(to);
+            Commit.checkExists(first);
+            Commit.checkExists(second);
+            return show(Changes.between(Commit.getCommit(first),
+                    Commit.getCommit(second)), stat, out);
+        });
+    }
+
+    /** Write CHANGES to OUT, as a summary if STAT. Returns null. */
+    private static Void show(Changes changes, boolean stat,
+                             OutputStream out) throws GitletException {
+        try {
+            if (stat) {
+                changes.showStat(out);
+            } else {
+                changes.show(out);
+            }
+        } catch (IOException excp) {
+            throw Utils.error(excp.getMessage());
+        }
+        return null;
+    }
+
+    /** Check out the file FILENAME as it is in the head of the current
+     * branch. */
+    public void checkoutFile(String filename) throws GitletException {
+        write(() -> checkoutFrom(Commit.currCommit(), filename));
+    }
+
+    /** Check out the file FILENAME as it is in the commit COMMIT, which
+     * may be abbreviated. */
+    public void checkoutFile(String commit, String filename)
+            throws GitletException {
+        write(() -> checkoutFrom(commit, filename));
+    }
+
+    /** Check out FILENAME from COMMIT. Returns null. */
+    private static Void checkoutFrom(String commit, String filename)
+            throws GitletException {
+        String id = Commit.fullCommit(commit);
+        Commit.checkExists(id);
+        Commit c = Commit.getCommit(id);
+        if (!c.containsFile(filename)) {
+            throw Utils.error("File does not exist in that commit.");
+        }
+        c.checkout(filename);
+        Stage.removeFromStage(filename);
+        return null;
+    }
+
+    /** Make the branch BRANCH current, checking out its head. */
+    public void checkoutBranch(String branch) throws GitletException {
+        write(() -> {
+            Branch.checkExists(branch);
+            Branch.checkIsActive(branch);
+            Branch.checkUntracked(branch);
+            Branch.checkout(branch);
+            Stage.clearStage();
+            Branch.setHeadBranch(branch);
+            return null;
+        });
+    }
+
+    /** Create the branch NAME at the current commit. */
+    public void branch(String name) throws GitletException {
+        write(() -> {
+            Branch.checkDouble(name);
+            return new Branch(name);
+        });
+    }
+
+    /** Delete the branch NAME, leaving its commits. */
+    public void removeBranch(String name) throws GitletException {
+        write(() -> {
+            Branch.checkExistsRm(name);
+            Branch.checkIsActiveRm(name);
+            Branch.delete(name);
+            return null;
+        });
+    }
+
+    /** Check out every file of the commit COMMIT, which may be
+     * abbreviated, and move the current branch to it. */
+    public void reset(String commit) throws GitletException {
+        write(() -> {
+            String id = Commit.fullCommit(commit);
+            Commit.checkExists(id);
+            Commit.checkUntracked(id);
+            Commit.reset(id);
+            Stage.clearStage();
+            Branch.updateBranch(Branch.head(), id);
+            return null;
+        });
+    }
+
+    /** Merge the branch NAME into the current branch. */
+    public void merge(String name) throws GitletException {
+        write(() -> {
+            Stage.checkStaged();
+            Branch.checkExistsRm(name);
+            if (Branch.head().equals(name)) {
+                throw Utils.error("Cannot merge a branch with itself.");
+            }
+            Branch.checkUntracked(name);
+            Branch.merge(name);
+            return null;
+        });
+    }
+
+    /** Record the remote NAME at LOCATION, which is a gitlet directory
+     * or a gitlet server. */
+    public void addRemote(String name, String location)
+            throws GitletException {
+        write(() -> {
+            File f = Utils.join(Repo.remotes(), name + ".txt");
+            if (f.exists()) {
+                throw Utils.error("A remote with that name already exists.");
+            }
+            Repo.createFile(f);
+            Utils.writeContents(f, location);
+            return null;
+        });
+    }
+
+    /** Forget the remote NAME. */
+    public void removeRemote(String name) throws GitletException {
+        write(() -> {
+            File f = Utils.join(Repo.remotes(), name + ".txt");
+            if (!f.exists()) {
+                throw Utils.error("A remote with that name does not exist.");
+            }
+            f.delete();
+            return null;
+        });
+    }
+
+    /** Copy the history of the current branch to the branch BRANCH of
+     * the remote NAME, which must not have commits the current branch
+     * lacks. */
+    public void push(String name, String branch) throws GitletException {
+        write(() -> {
+            String location = Remote.location(name);
+            if (Remote.isServed(location)) {
+                Transport.push(location, branch);
+                return null;
+            }
+            File remote = Remote.directory(name);
+            return Lock.exclusive(remote, () -> {
+                pushLocal(remote, branch);
+                return null;
+            });
+        });
+    }
+
+    /** Copy the history of the current branch to the branch BRANCH of
+     * the gitlet directory REMOTE. */
+    private static void pushLocal(File remote, String branch)
+            throws GitletException {
+        Commit head = Commit.currCommitObj();
+        List<Commit> history = head.getHistory();
+        Commit commit = Branch.getRemoteHead(branch, remote);
+        if (commit == null) {
+            File branchFile = Utils.join(remote, "branches",
+                    branch + ".txt");
+            Repo.createFile(branchFile);
+            for (Commit c : history) {
+                writeCommit(remote, c);
+            }
+            Utils.writeContents(branchFile, head.sha1());
+            return;
+        }
+        List<String> ids = new ArrayList<>();
+        for (Commit c : history) {
+            ids.add(c.sha1());
+        }
+        if (!ids.contains(commit.sha1())) {
+            throw Utils.error("Please pull down remote changes "
+                    + "before pushing.");
+        }
+        for (Commit c : history) {
+            if (c.getTime() > commit.getTime()) {
+                writeCommit(remote, c);
+            }
+        }
+        Branch.setRemoteHead(remote, branch, head.sha1());
+    }
+
+    /** Save the commit C in the objects of the gitlet directory REMOTE,
+     * copying its file as it is. */
+    private static void writeCommit(File remote, Commit c) {
+        File f = Utils.join(remote, "objects", c.sha1() + ".txt");
+        Utils.writeContents(f, Utils.readContents(
+                Utils.join(Repo.objects(), c.sha1() + ".txt")));
+    }
+
+    /** Copy the history of the branch BRANCH of the remote NAME into the
+     * branch NAME/BRANCH, going back at most DEPTH commits if DEPTH is
+     * positive. Returns the SHA1 code of the fetched head. */
+    public String fetch(String name, String branch, int depth)
+            throws GitletException {
+        return write(() -> Remote.fetch(name, branch, depth));
+    }
+
+    /** Fetch the branch BRANCH of the remote NAME, as by fetch with
+     * DEPTH, and merge it into the current branch. */
+    public void pull(String name, String branch, int depth)
+            throws GitletException {
+        write(() -> {
+            Stage.checkStaged();
+            Branch.pull(name, branch, depth);
+            return null;
+        });
+    }
+
+    /** Find the objects nothing in this repository refers to, deleting
+     * those last changed more than GRACE milliseconds ago if PRUNE, and
+     * return what was found. */
+    public Gc gc(boolean prune, long grace) throws GitletException {
+        return write(() -> Gc.collect(prune, grace));
+    }
+
+    /** Check every object of this repository against its name and
+     * every reference between them, and return what was found. */
+    public Fsck fsck() throws GitletException {
+        return read(Fsck::check);
+    }
+
+    /** Rename every blob of this repository to the code of its contents
+     * alone, writing the commits that refer to them again, and return
+     * what was done. */
+    public Migrate migrate() throws GitletException {
+        return write(Migrate::run);
+    }
+
+    /** Return the numbers of the objects of this repository. */
+    public ObjectCount countObjects() {
+        return read(ObjectCount::count);
+    }
+
+    /** Return the commit that last changed each line of the file
+     * FILENAME as the head of the current branch has it. */
+    public Blame blame(String filename) throws GitletException {
+        return read(() -> {
+            Commit head = Commit.currCommitObj();
+            if (!head.containsFile(filename)) {
+                throw Utils.error("File does not exist in that commit.");
+            }
+            return Blame.of(head, filename);
+        });
+    }
+
+    /** Return the sparse-checkout patterns of this repository. */
+    public List<String> sparsePatterns() {
+        return read(() -> new ArrayList<>(Sparse.current().patterns()));
+    }
+
+    /** Keep only the tracked files matching PATTERNS in the working
+     * directory, or every file if PATTERNS is empty. */
+    public void setSparsePatterns(List<String> patterns)
+            throws GitletException {
+        write(() -> {
+            Sparse.set(patterns);
+            return null;
+        });
+    }
+
+    /** Return a server for this repository on PORT, or any free port if
+     * PORT is 0, which has yet to be started. */
+    public Server serve(int port) throws IOException {
+        Repository outer = use(this);
+        try {
+            return new Server(gitlet, port);
+        } finally {
+            use(outer);
+        }
+    }
+
+    /** Return the result of OP, run in this repository under its shared
+     * lock. */
+    private <T> T read(Supplier<T> op) throws GitletException {
+        return locked(false, op);
+    }
+
+    /** Return the result of OP, run in this repository under its
+     * exclusive lock. */
+    private <T> T write(Supplier<T> op) throws GitletException {
+        return locked(true, op);
+    }
+
+    /** Return the result of OP, run in this repository under its lock,
+     * which is exclusive if EXCLUSIVE. */
+    private <T> T locked(boolean exclusive, Supplier<T> op)
+            throws GitletException {
+        return within(() -> exclusive ? Lock.exclusive(gitlet, op)
+                : Lock.shared(gitlet, op));
+    }
+
+    /** Return the result of OP, run with this as the current
+     * repository. */
+    private <T> T within(Supplier<T> op) {
+        Repository outer = use(this);
+        try {
+            return op.get();
+        } finally {
+            use(outer);
+        }
+    }
+
+    /** Return the repository this thread works in. */
+    static Repository current() {
+        Repository r = CURRENT.get();
+        return (r != null) ? r : workingDirectory();
+    }
+
+    /** Make R the repository this thread works in, or go back to the
+     * default if R is null. Returns the one it worked in before, or
+     * null if it had none. */
+    static Repository use(Repository r) {
+        Repository outer = CURRENT.get();
+        if (r == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(r);
+        }
+        return outer;
+    }
+
+    /** Return TASK changed to run in the repository current to the
+     * thread calling this, whichever thread it runs on. */
+    static <T> Callable<T> bind(Callable<T> task) {
+        Repository r = current();
+        return () -> {
+            Repository outer = use(r);
+            try {
+                return task.call();
+            } finally {
+                use(outer);
+            }
+        };
+    }
+
+    /** Return the value cached in this repository under KEY, computing
+     * it from FILE by LOAD if there is none or if FILE's time or size
+     * have changed since, as when another process has written it. */
+    @SuppressWarnings("unchecked")
+    synchronized <T> T cached(String key, File file, Supplier<T> load) {
+        long[] stamp = stamp(file);
+        Stamped c = cache.get(key);
+        if (c == null || !Arrays.equals(c.stamp, stamp)) {
+            c = new Stamped(stamp, load.get());
+            cache.put(key, c);
+        }
+        return (T) c.value;
+    }
+
+    /** Return the modification time in nanoseconds and the size of
+     * FILE, or -1 and -1 if it does not exist. */
+    private static long[] stamp(File file) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return new long[] {
+                a.lastModifiedTime().to(TimeUnit.NANOSECONDS), a.size()
+            };
+        } catch (IOException excp) {
+            return new long[] { -1, -1 };
+        }
+    }
+
+    /** A value read from a file, with the file's time and size then. */
+    private static final class Stamped {
+
+        /** VALUE, read from a file whose time and size were STAMP. */
+        Stamped(long[] stamp, Object value) {
+            this.stamp = stamp;
+            this.value = value;
+        }
+
+        /** The file's time and size. */
+        private final long[] stamp;
+
+        /** The value. */
+        private final Object value;
+    }
+
+    /** Drop the value cached in this repository under KEY. */
+    synchronized void forget(String key) {
+        cache.remove(key);
+    }
+
+    /** Return the commit with SHA1 code ID as last read from this
+     * repository's objects, or null if it is not remembered. */
+    synchronized Commit loaded(String id) {
+        return commits.get(id);
+    }
+
+    /** Remember the commit C, read from this repository's objects under
+     * the SHA1 code ID, dropping the one least recently used if more
+     * than COMMITS are remembered. */
+    synchronized void remember(String id, Commit c) {
+        commits.put(id, c);
+    }
+
+    /** Forget every commit read, as when objects have been deleted or
+     * written again. */
+    synchronized void forgetCommits() {
+        commits.clear();
+    }
+
+    /** Return the repository in the process's working directory. */
+    private static synchronized Repository workingDirectory() {
+        if (defaultRepo == null) {
+            defaultRepo = new Repository(new File("."));
+        }
+        return defaultRepo;
+    }
+
+    /** The repository each thread works in, if it has entered one. */
+    private static final ThreadLocal<Repository> CURRENT =
+            new ThreadLocal<>();
+
+    /** The repository in the process's working directory, once used. */
+    private static Repository defaultRepo;
+
+    /** The working directory. */
+    private final File root;
+
+    /** The gitlet directory within ROOT. */
+    private final File gitlet;
+
+    /** Values read from the gitlet directory, by name. */
+    private final Map<String, Stamped> cache = new HashMap<>();
+
+    /** Commits read from the objects directory, by SHA1 code, least
+     * recently used first. */
+    private final Map<String, Commit> commits =
+            new LinkedHashMap<String, Commit>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Commit> eldest) {
+                    return size() > COMMITS;
+                }
+            };
+}
@@ -1,7 +1,11 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /** An abstract class for objects that are to be saved in the
  * objects directory of the gitlet repo. Can be overwritten to
@@ -10,6 +14,10 @@ import java.io.Serializable;
  */
 public abstract class Saveable implements Serializable {
 
+    /** The serialVersionUID older versions computed for this class,
+     * so that the objects they serialized can still be read. */
+    private static final long serialVersionUID = -7544606930685176432L;
+
     /** Returns the shaCode associated with the object. */
     public abstract String shaCode();
 
@@ -20,15 +28,52 @@ public abstract class Saveable implements Serializable {
     }
 
     /** Save a file of the name CODE in the objects directory
-     * of the gitlet repo.
+     * of the gitlet repo, unless there is one already: an object's
+     * code names its contents, so that file holds this object.
      * Assumes that the object directory exists.
      */
     public void saveCode(String code) {
-        assert Repo.OBJECTS.exists();
-        File obj = Utils.join(Repo.OBJECTS, code + ".txt");
-        if (!obj.exists()) {
-            Repo.createFile(obj);
+        assert Repo.objects().exists();
+        Events.ObjectWrite e = new Events.ObjectWrite();
+        e.begin();
+        File obj = Utils.join(Repo.objects(), code + ".txt");
+        boolean exists = obj.exists();
+        if (!exists) {
+            long start = Metrics.start();
+            byte[] bytes = Utils.serialize(this);
+            try {
+                writeObjectFile(obj, bytes);
+            } catch (IOException excp) {
+                throw Utils.error("Could not save object %s.", code);
+            }
+            Metrics.record(Metrics.Op.WRITE_OBJECT, start, bytes.length);
+        }
+        if (e.shouldCommit()) {
+            e.id = code;
+            e.type = getClass().getSimpleName().toLowerCase();
+            e.size = exists ? 0 : obj.length();
+            e.commit();
+        }
+    }
+
+    /** Write PARTS, one after another, as the object file OBJ. They go
+     * to a file in the tmp directory that is then moved to OBJ, so that
+     * OBJ never holds part of an object, even if gitlet stops while
+     * writing it. */
+    static void writeObjectFile(File obj, byte[]... parts)
+            throws IOException {
+        Repo.createDir(Repo.tmp());
+        File tmp = File.createTempFile(obj.getName(), ".tmp", Repo.tmp());
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                for (byte[] part : parts) {
+                    out.write(part);
+                }
+            }
+            Files.move(tmp.toPath(), obj.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
         }
-        Utils.writeObject(obj, this);
     }
 }
@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Serves a gitlet repository to Transport clients over a socket bound
+ * to the loopback interface.
+ * @author AMK Somani
+ */
+public class Server {
+
+    /** Operation name of a fetch. */
+    static final String FETCH = "fetch";
+
+    /** Operation name of a push. */
+    static final String PUSH = "push";
+
+    /** Status sent when a request can go ahead. Any other status is an
+     * error message. */
+    static final String OK = "ok";
+
+    /** Status sent when the branch asked for cannot be a branch
+     * name. */
+    static final String BAD_BRANCH = "Not a valid branch name.";
+
+    /** Largest number of connections handled at the same time. */
+    static final int THREADS = 4;
+
+    /** A server for the gitlet directory REPO listening on PORT, or on
+     * any free port if PORT is 0. Connections are handled as if in the
+     * repository current when it was made. */
+    public Server(File repo, int port) throws IOException {
+        this.repo = repo;
+        this.context = Repository.current();
+        this.socket = new ServerSocket(port, 0,
+                InetAddress.getLoopbackAddress());
+        this.pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    /** Return the port this server listens on. */
+    public int port() {
+        return socket.getLocalPort();
+    }
+
+    /** Return the remote location clients use to reach this server. */
+    public String location() {
+        return Remote.SCHEME + socket.getInetAddress().getHostAddress()
+                + ":" + port();
+    }
+
+    /** Accept and handle connections until this server is closed. */
+    public void serve() {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                pool.submit(() -> handle(client));
+            } catch (IOException excp) {
+                if (!socket.isClosed()) {
+                    System.err.println(excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Start serving on a background thread, for use within a
+     * running program such as a test. */
+    public void start() {
+        Thread t = new Thread(this::serve, "gitlet-server");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Stop accepting connections. */
+    public void close() throws IOException {
+        socket.close();
+        pool.shutdown();
+    }
+
+    /** Carry out the single transfer requested on CLIENT. */
+    private void handle(Socket client) {
+        Repository outer = Repository.use(context);
+        try (client) {
+            DataInputStream in = Transport.input(client);
+            DataOutputStream out = Transport.output(client);
+            String op = in.readUTF();
+            if (op.equals(FETCH)) {
+                upload(in, out);
+            } else if (op.equals(PUSH)) {
+                receive(in, out);
+            } else {
+                out.writeUTF("No command with that name exists.");
+                out.flush();
+            }
+        } catch (IOException | RuntimeException excp) {
+            System.err.println(excp.getMessage());
+        } finally {
+            Repository.use(outer);
+        }
+    }
+
+    /** Answer a fetch read from IN by writing the requested branch head,
+     * the commits where a shallow fetch stops and a pack of what the
+     * client lacks to OUT. The client is taken to have the history of
+     * every commit it offers that is also here, so a branch that forked
+     * from any of its ancestors only sends the commits since the fork.
+     */
+    private void upload(DataInputStream in, DataOutputStream out)
+            throws IOException {
+        String branch = in.readUTF();
+        Set<String> common = new HashSet<>();
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String id = in.readUTF();
+            if (Pack.isId(id)
+                    && Utils.join(repo, "objects", id + ".txt").isFile()) {
+                common.add(id);
+            }
+        }
+        int depth = in.readInt();
+        if (!Branch.isValidName(branch)) {
+            out.writeUTF(BAD_BRANCH);
+            out.flush();
+            return;
+        }
+        File branchFile = Utils.join(repo, "branches", branch + ".txt");
+        if (!branchFile.exists()) {
+            out.writeUTF("That remote does not have that branch.");
+            out.flush();
+            return;
+        }
+        String head = Lock.shared(repo,
+                () -> Utils.readContentsAsString(branchFile).trim());
+        Set<String> known = Remote.ancestry(common, repo);
+        List<Commit> commits =
+                Remote.missingCommits(head, repo, known::contains, depth);
+        List<String> shallow =
+                Remote.shallowBoundary(commits, known::contains);
+        Set<String> exclude =
+                Remote.knownBlobs(common, commits, known, repo);
+        out.writeUTF(OK);
+        out.writeUTF(head);
+        out.writeInt(shallow.size());
+        for (String id : shallow) {
+            out.writeUTF(id);
+        }
+        Pack.write(out, repo, commits, exclude);
+    }
+
+    /** Answer a push read from IN, reporting the outcome on OUT. The
+     * branch only moves if nobody else moved it during the transfer.
+     * Objects and branch names from the client are checked before any
+     * file is named after them. */
+    private void receive(DataInputStream in, DataOutputStream out)
+            throws IOException {
+        String branch = in.readUTF();
+        if (!Branch.isValidName(branch)) {
+            out.writeUTF(BAD_BRANCH);
+            out.flush();
+            return;
+        }
+        File branchFile = Utils.join(repo, "branches", branch + ".txt");
+        String old = Lock.shared(repo, () -> branchFile.exists()
+                ? Utils.readContentsAsString(branchFile).trim() : "");
+        out.writeUTF(OK);
+        out.writeUTF(old);
+        out.flush();
+        String head = in.readUTF();
+        if (head.equals("")) {
+            return;
+        }
+        Pack.checkId(head);
+        Pack.read(in, repo);
+        String status = Lock.exclusive(repo, () -> {
+            String current = branchFile.exists()
+                    ? Utils.readContentsAsString(branchFile).trim() : "";
+            if (!current.equals(old)) {
+                return "Please pull down remote changes before pushing.";
+            } else if (!Utils.join(repo, "objects", head + ".txt").isFile()) {
+                return "Incomplete push.";
+            }
+            Utils.writeContents(branchFile, head);
+            return OK;
+        });
+        out.writeUTF(status);
+        out.flush();
+    }
+
+    /** The gitlet directory being served. */
+    private final File repo;
+
+    /** The repository the handling threads work in. */
+    private final Repository context;
+
+    /** The socket accepting connections. */
+    private final ServerSocket socket;
+
+    /** Threads handling accepted connections. */
+    private final ExecutorService pool;
+}
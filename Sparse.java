@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The set of tracked files that are kept in the working directory.
+ * It is given by the glob patterns in the sparse-checkout file, one per
+ * line, such as "*.java" or "docs-*"; lines that are blank or start
+ * with # are skipped. A file is included if its name matches any
+ * pattern, and every file is included if there are none. Files left
+ * out are never written, hashed or reported as deleted, though they
+ * stay in the commits made here.
+ * @author AMK Somani
+ */
+class Sparse {
+
+    /** The set of files matching any of PATTERNS, or every file if
+     * PATTERNS is empty. */
+    Sparse(List<String> patterns) {
+        this.patterns = Collections.unmodifiableList(patterns);
+        for (String p : patterns) {
+            matchers.add(FileSystems.getDefault()
+                    .getPathMatcher("glob:" + p));
+        }
+    }
+
+    /** Return the set of files of this repository's sparse-checkout
+     * file, read again whenever the file changes. */
+    static Sparse current() {
+        return Repository.current().cached("sparse", Repo.sparse(), () -> {
+            List<String> patterns = new ArrayList<>();
+            if (Repo.sparse().exists()) {
+                for (String line
+                        : Utils.readContentsAsString(Repo.sparse())
+                        .split("\n")) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        patterns.add(line);
+                    }
+                }
+            }
+            return new Sparse(patterns);
+        });
+    }
+
+    /** Returns true if the file NAME is kept in the working directory
+     * by this repository's sparse-checkout file. */
+    static boolean includes(String name) {
+        return current().contains(name);
+    }
+
+    /** Returns true if the file NAME is in this set. */
+    boolean contains(String name) {
+        if (matchers.isEmpty()) {
+            return true;
+        }
+        for (PathMatcher m : matchers) {
+            if (m.matches(Paths.get(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the patterns of this set. */
+    List<String> patterns() {
+        return patterns;
+    }
+
+    /** Make PATTERNS this repository's sparse-checkout patterns, clearing
+     * them if PATTERNS is empty, and update the working directory from
+     * the old set of files to the new one for the current commit. Files
+     * that join the set are written and files that leave it are deleted.
+     * Throws an error, changing nothing, if that would overwrite an
+     * untracked file or lose changes to a tracked one. */
+    static void set(List<String> patterns) throws GitletException {
+        for (String p : patterns) {
+            try {
+                FileSystems.getDefault().getPathMatcher("glob:" + p);
+            } catch (IllegalArgumentException excp) {
+                throw Utils.error("Invalid pattern: %s", p);
+            }
+        }
+        Sparse old = current();
+        Sparse now = new Sparse(new ArrayList<>(patterns));
+        Commit head = Commit.currCommitObj();
+        Stage stage = Stage.savedStage();
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (String name : head.getFileSet()) {
+            if (Repo.neverConsider(name)) {
+                continue;
+            }
+            boolean before = old.contains(name), after = now.contains(name);
+            if (!before && after) {
+                if (Repo.working(name).exists()) {
+                    throw Utils.error("There is an untracked file in the "
+                            + "way; delete it, or add and commit it "
+                            + "first.");
+                }
+                added.add(name);
+            } else if (before && !after && Repo.working(name).exists()) {
+                if (!stage.workingCode(name).equals(head.fileCode(name))) {
+                    throw Utils.error("You have uncommitted changes.");
+                }
+                removed.add(name);
+            }
+        }
+        stage.save();
+
+        if (patterns.isEmpty()) {
+            Repo.sparse().delete();
+        } else {
+            Utils.writeContents(Repo.sparse(),
+                    String.join("\n", patterns) + "\n");
+        }
+        Repository.current().forget("sparse");
+        Commit.writeFiles(head, added, removed);
+    }
+
+    /** The patterns, as given. */
+    private final List<String> patterns;
+
+    /** A matcher for each pattern. */
+    private final List<PathMatcher> matchers = new ArrayList<>();
+}
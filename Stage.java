@@ -1,30 +1,96 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 /** A class representing the stage in gitlet, with the option
- * to stage and unstage files.
+ * to stage and unstage files. The stage is kept in the binary Index,
+ * which also remembers the code of each file it has hashed together
+ * with the file's modification time and size, so a file that has not
+ * changed since is not read again. Older versions serialized the
+ * stage itself to the index file; such a stage can still be read, and
+ * its shaMap and removeList are taken into the index.
  * @author AMK Somani
  */
-public class Stage extends Saveable implements Serializable  {
+public class Stage implements Serializable {
+
+    /** Files changed less than this many nanoseconds before they were
+     * hashed may change again without their time changing, so their
+     * time and size are not trusted. */
+    static final long RACY = TimeUnit.SECONDS.toNanos(2);
 
     /** A representation of the staging area for files, which files
      * can be staged for addition or removal.
      */
     private Stage() {
-        Stage old = savedStage();
-        shaMap = (old == null) ? new HashMap<>() : old.shaMap;
-        removeList = (old == null) ? new HashMap<>() : old.removeList;
+        index = Index.read(Repo.index(), Lock.sharedOnly());
     }
 
     /** Returns the stage after staging FILENAME for addition. */
     public static Stage stage(String filename) throws GitletException {
         Stage s = new Stage();
-        Blob blob = s.parseFile(filename);
-        s.stageAddition(blob);
-        s.saveFile();
+        s.checkFileExistence(filename);
+        long[] stat = stat(filename);
+        String code = s.known(filename, stat);
+        if (code == null) {
+            code = Blob.create(filename).shaCode();
+        }
+        s.stageAddition(filename, code, stat);
+        s.index.save();
+        return s;
+    }
+
+    /** Returns the stage after staging the working files FILENAMES for
+     * addition, which are read, hashed and saved by a BulkAdd. A file
+     * whose time and size the index records, and whose blob exists, is
+     * not read again. The index is written once. */
+    public static Stage stageAll(List<String> filenames)
+            throws GitletException {
+        Stage s = new Stage();
+        List<BulkAdd.Item> items = BulkAdd.run(filenames, s::known);
+        for (BulkAdd.Item item : items) {
+            s.stageAddition(item.name(), item.code(), item.stat());
+        }
+        s.index.save();
+        return s;
+    }
+
+    /** Return the code of the working file FILENAME, whose time and
+     * size are STAT, if the index shows it unchanged since it was
+     * hashed and its blob exists, and null otherwise. */
+    private String known(String filename, long[] stat) {
+        Index.Entry e = index.get(filename);
+        if (fresh(e, stat) && Utils.join(Repo.objects(),
+                e.id() + ".txt").exists()) {
+            return e.id();
+        }
+        return null;
+    }
+
+    /** Returns the stage after staging the blob with code CODE as the
+     * new version of FILENAME, without reading the working directory. */
+    public static Stage stageCode(String filename, String code) {
+        return stageCodes(Collections.singletonMap(filename, code));
+    }
+
+    /** Returns the stage after staging, for each file name in CODES, the
+     * blob with the code it maps to as the file's new version, without
+     * reading the working directory. The index is written once. */
+    public static Stage stageCodes(Map<String, String> codes) {
+        Stage s = new Stage();
+        for (Map.Entry<String, String> e : codes.entrySet()) {
+            s.stageAddition(e.getKey(), e.getValue(), null);
+        }
+        s.index.save();
         return s;
     }
 
@@ -32,118 +98,167 @@ public class Stage extends Saveable implements Serializable  {
     public static Stage antistage(String filename) throws GitletException {
         Stage s = new Stage();
         s.stageRemoval(filename);
-        s.saveFile();
+        s.index.save();
         return s;
     }
 
-    /** Checks conditions for addition of blob B to the
-     * stage, and adds and removes it from the stage object
-     * as necessary. */
-    private void stageAddition(Blob b) {
-        Commit lastCommit = Commit.currCommitObj();
-        if (lastCommit.getBlobCode(b.filename()).equals(b.shaCode())) {
-            if (shaMap.containsKey(b.filename())) {
-                shaMap.remove(b.filename());
-            }
-        } else {
-            if (!shaMap.containsKey(b.filename())) {
-                shaMap.put(b.filename(), b.shaCode());
-            }
+    /** Stage the blob with code CODE as the new version of FILENAME,
+     * whose time and size are in STAT, or unknown if STAT is null. The
+     * file is only marked as added if it differs from the last commit.
+     */
+    private void stageAddition(String filename, String code, long[] stat) {
+        if (head == null) {
+            head = Commit.currCommitObj();
         }
-        if (removeList.containsKey(b.filename())) {
-            removeList.remove(b.filename());
+        int flags = head.getBlobCode(filename).equals(code)
+                ? 0 : Index.ADDED;
+        if (stat == null || isRacy(stat)) {
+            index.put(filename, code, flags, 0, -1);
+        } else {
+            index.put(filename, code, flags, stat[0], stat[1]);
         }
     }
 
     /** Stage the removal of file FILENAME. */
     private void stageRemoval(String filename) {
-        boolean change = false;
-        if (shaMap.containsKey(filename)) {
-            shaMap.remove(filename);
-            change = true;
-        } else {
-            Commit curr = Commit.currCommitObj();
-            if (curr.containsFile(filename)) {
-                removeList.put(filename, filename);
-                Utils.restrictedDelete(filename);
-                change = true;
-            }
+        if (containsFile(filename)) {
+            index.setFlags(filename, 0, false);
+            return;
         }
-        if (!change) {
+        Commit curr = Commit.currCommitObj();
+        if (!curr.containsFile(filename)) {
             throw Utils.error("No reason to remove the file.");
         }
+        index.put(filename, curr.getBlobCode(filename), Index.REMOVED,
+                0, -1);
+        Utils.restrictedDelete(Repo.working(filename));
     }
 
     /** Removes the file FILENAME from the stage. */
     public static void removeFromStage(String filename) {
-        Stage s = savedStage();
-        if (s == null) {
-            return;
+        Stage s = new Stage();
+        if (s.containsFile(filename)) {
+            s.index.setFlags(filename, 0, true);
+            s.index.save();
         }
-        if (s.shaMap.containsKey(filename)) {
-            s.shaMap.remove(filename);
+    }
+
+    /** Replace the code of every entry of the index that is a key of
+     * BLOBS with the code that it maps to. */
+    static void translate(Map<String, String> blobs) {
+        Stage s = new Stage();
+        for (Index.Entry e : s.index.entries()) {
+            String code = blobs.get(e.id());
+            if (code != null && !code.equals(e.id())) {
+                s.index.put(e.path(), code, e.flags(), e.mtime(), e.size());
+            }
         }
-        s.saveFile();
+        s.index.save();
     }
 
-    /** Returns the previously saved stage from the index file in the
-     * gitlet repo. */
+    /** Returns the stage saved in the index file of the gitlet repo. */
     public static Stage savedStage() {
-        String s = Utils.readContentsAsString(Repo.INDEX).trim();
-        if (s.equals("")) {
-            return null;
-        }
-        return Utils.readObject(Repo.INDEX, Stage.class);
+        return new Stage();
     }
 
-    /** Clears the currently saved stage. */
-    public static void clearStage() {
-        Utils.writeContents(Repo.INDEX, "");
+    /** Clears the currently saved stage, keeping what is known about
+     * the files in the working directory. */
+    public static void clearStage() throws GitletException {
+        Index index = Index.read(Repo.index());
+        for (Index.Entry e : index.flagged(Index.ADDED | Index.REMOVED)) {
+            if ((e.flags() & Index.REMOVED) != 0) {
+                index.setFlags(e.path(), Index.DELETED, true);
+                index.compact();
+            } else {
+                index.setFlags(e.path(), 0, false);
+            }
+        }
+        index.save();
     }
 
     /** Returns string of the files of the stage as per status call. */
     public static String stageDisplay() {
-        Stage s = savedStage();
-        String disp = "";
-        if (s == null) {
-            return disp;
-        } else {
-            for (String code: s.shaMap.keySet()) {
-                disp += code + "\n";
-            }
+        StringBuilder disp = new StringBuilder();
+        for (String name : new TreeSet<>(savedStage().shaMap().keySet())) {
+            disp.append(name).append("\n");
         }
-        return disp;
+        return disp.toString();
     }
 
     /** Returns a string of all the removed files as per status call. */
     public static String removeDisplay() {
-        Stage s = savedStage();
-        String disp = "";
-        if (s == null) {
-            return disp;
-        } else {
-            for (String code: s.removeList.keySet()) {
-                disp += code + "\n";
+        StringBuilder disp = new StringBuilder();
+        for (String name
+                : new TreeSet<>(savedStage().removeList().keySet())) {
+            disp.append(name).append("\n");
+        }
+        return disp.toString();
+    }
+
+    /** Return the SHA1 code the working file FILENAME would have as a
+     * blob. The file is only read if its time or size differ from those
+     * recorded when it was last hashed. Its new ones are kept in memory
+     * until SAVE writes them, which only a command holding the
+     * exclusive lock may do. */
+    public String workingCode(String filename) {
+        long[] stat = stat(filename);
+        Index.Entry e = index.get(filename);
+        if (fresh(e, stat)) {
+            return e.id();
+        }
+        String code = Blob.checker(filename).shaCode();
+        if (stat != null && !isRacy(stat)) {
+            if (e == null) {
+                index.put(filename, code, 0, stat[0], stat[1]);
+            } else if (e.flags() == 0 || e.id().equals(code)) {
+                index.put(filename, code, e.flags(), stat[0], stat[1]);
             }
         }
-        return disp;
+        return code;
+    }
+
+    /** Write what this stage has learned about the working files back
+     * to the index file. Only for commands holding the exclusive lock:
+     * readers must leave the index file as it is. */
+    public void save() {
+        assert !Lock.sharedOnly();
+        index.save();
+    }
+
+    /** Returns true if the entry E records the time and size in STAT. */
+    private static boolean fresh(Index.Entry e, long[] stat) {
+        return e != null && stat != null && e.size() >= 0
+                && e.size() == stat[1] && e.mtime() == stat[0];
     }
 
-    /** Returns the blob associated with the given file.
-     * Throws error if the FILENAME
-     * does not exist in the directory. */
-    private Blob parseFile(String filename) throws GitletException {
-        checkFileExistence(filename);
-        Blob b = Blob.create(filename);
-        return b;
+    /** Returns true if the file with time and size STAT changed too
+     * recently for them to be trusted. */
+    private static boolean isRacy(long[] stat) {
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        return now - stat[0] < RACY;
+    }
+
+    /** Return the modification time in nanoseconds and the size of the
+     * working file FILENAME, or null if they cannot be read. */
+    static long[] stat(String filename) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(
+                    Repo.working(filename).toPath(),
+                    BasicFileAttributes.class);
+            return new long[] {
+                a.lastModifiedTime().to(TimeUnit.NANOSECONDS), a.size()
+            };
+        } catch (IOException excp) {
+            return null;
+        }
     }
 
     /** Checks if the file FILENAME exists in user
      * directory, and throws an error
      * if it does not. */
     public void checkFileExistence(String filename) throws GitletException {
-        List<String> filelist = Utils.plainFilenamesIn(".");
-        if (!filelist.contains(filename)) {
+        File f = Repo.working(filename);
+        if (new File(filename).getParent() != null || !f.isFile()) {
             throw Utils.error("File does not exist.");
         }
     }
@@ -152,55 +267,65 @@ public class Stage extends Saveable implements Serializable  {
      * throw an error if it is. */
     public static void checkStaged() throws GitletException {
         Stage s = savedStage();
-        if (s != null) {
-            if (!s.shaMap.isEmpty() || !s.removeList.isEmpty()) {
-                throw Utils.error("You have uncommitted changes.");
-            }
+        if (!s.shaMap().isEmpty() || !s.removeList().isEmpty()) {
+            throw Utils.error("You have uncommitted changes.");
         }
     }
 
     /** Returns true if this stage contains
      * the file FILENAME. */
     public boolean containsFile(String filename) {
-        return shaMap.containsKey(filename);
+        Index.Entry e = index.get(filename);
+        return e != null && (e.flags() & Index.ADDED) != 0;
     }
 
     /** Returns true if this stage contains the file FILENAME,
      * both add and delete. */
     public boolean contains(String filename) {
-        return shaMap.containsKey(filename)
-                || removeList.containsKey(filename);
-    }
-
-    /** Returns the unique SHA1 String code for the stage object. */
-    public String shaCode() {
-        return Utils.sha1(Utils.serialize(shaMap),
-                Utils.serialize(removeList));
-    }
-
-    @Override
-    public void saveCode(String code) {
-        assert Repo.INDEX.exists();
-        Utils.writeObject(Repo.INDEX, this);
+        Index.Entry e = index.get(filename);
+        return e != null
+                && (e.flags() & (Index.ADDED | Index.REMOVED)) != 0;
     }
 
     /** Returns the shamap associated with this stage. */
     public HashMap<String, String> shaMap() {
+        if (shaMap == null) {
+            shaMap = new HashMap<>();
+            for (Index.Entry e : index.flagged(Index.ADDED)) {
+                shaMap.put(e.path(), e.id());
+            }
+        }
         return shaMap;
     }
 
     /** returns the removelist associated with this stage. */
     public HashMap<String, String> removeList() {
+        if (removeList == null) {
+            removeList = new HashMap<>();
+            for (Index.Entry e : index.flagged(Index.REMOVED)) {
+                removeList.put(e.path(), e.path());
+            }
+        }
         return removeList;
     }
 
+    /** The serialVersionUID of the stages older versions wrote, so
+     * that one left in the index file can still be read. */
+    private static final long serialVersionUID = 7399419877232036409L;
+
+    /** The index holding this stage. */
+    private final transient Index index;
+
     /** Maintains a mapping from filename to SHA1
      * code of its corresponding blob
-     * for files to be added. */
+     * for files to be added, once asked for. */
     private HashMap<String, String> shaMap;
 
+    /** The head commit, once it has been needed. */
+    private transient Commit head;
+
     /** Maintains a mapping from filename to SHA1
      * code of its corresponding blob
-     * for files to be removed. */
+     * for files to be removed, once asked for. */
     private HashMap<String, String> removeList;
 }
@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** A generator of synthetic repositories, for reproducing how gitlet
+ * behaves on large ones. A repository is built straight through the
+ * paths that write objects and refs, Saveable.saveCode, Commit.create
+ * and Branch.updateBranch, without a working file or command per
+ * change, so repositories of many thousands of files and commits take
+ * seconds to make.
+ *
+ * The initial commit of master holds every file. Each later commit
+ * changes a few files on one branch, the branches taking turns, or,
+ * for a share of the commits set by the merge density, merges one
+ * branch into another as the topology dictates. File sizes follow a
+ * log-normal distribution around a median, as real trees do: most
+ * files small and a few large. The same parameters and seed always
+ * give the same repository. Once built, master is checked out.
+ * @author AMK Somani
+ */
+public class Synthetic {
+
+    /** Which branches merge into which. */
+    public enum Topology {
+        /** Side branches are merged into master and never the reverse. */
+        FEATURE,
+        /** Any branch may be merged into any other. */
+        MESH
+    }
+
+    /** Files changed by each commit that is not a merge. */
+    static final int CHANGES = 4;
+
+    /** Standard deviation of the logarithm of the file sizes. */
+    static final double SPREAD = 1.0;
+
+    /** Time of the first generated commit, in seconds. */
+    static final long EPOCH = 1_600_000_000L;
+
+    /** A generator of repositories with FILES files whose sizes have
+     * median MEDIANSIZE bytes, COMMITS commits spread over BRANCHES
+     * branches, and a share MERGEDENSITY of merges between branches as
+     * TOPOLOGY allows. Contents and choices come from SEED. */
+    public Synthetic(int files, int commits, int branches,
+                     Topology topology, double mergeDensity,
+                     int medianSize, long seed) {
+        if (files < 1 || commits < 1 || branches < 1 || medianSize < 1) {
+            throw new IllegalArgumentException("sizes must be positive");
+        }
+        this.files = files;
+        this.commits = commits;
+        this.branches = branches;
+        this.topology = topology;
+        this.mergeDensity = mergeDensity;
+        this.medianSize = medianSize;
+        this.seed = seed;
+    }
+
+    /** Return a new repository in the directory ROOT, built as this
+     * generator describes, with master checked out. Throws an error if
+     * ROOT already holds a repository. */
+    public Repository generate(File root) throws GitletException {
+        Repository repo = Repository.init(root);
+        Repository outer = Repository.use(repo);
+        try {
+            Lock.exclusive(repo.gitlet(), () -> {
+                build();
+                return null;
+            });
+        } finally {
+            Repository.use(outer);
+        }
+        return repo;
+    }
+
+    /** Build the history of the current repository and check out
+     * master. */
+    private void build() {
+        random = new Random(seed);
+        Map<String, String> codes = new HashMap<>();
+        for (int i = 0; i < files; i += 1) {
+            codes.put(name(i), save(name(i)));
+        }
+        Stage.stageCodes(codes);
+        Commit.create(message(0), EPOCH);
+        for (int b = 1; b < branches; b += 1) {
+            new Branch(branchName(b));
+        }
+        for (int c = 1; c < commits; c += 1) {
+            int b = c % branches;
+            if (branches > 1 && random.nextDouble() < mergeDensity) {
+                if (topology == Topology.FEATURE) {
+                    merge(0, (b == 0) ? 1 + random.nextInt(branches - 1)
+                            : b, c);
+                } else {
+                    merge(b, (b + 1 + random.nextInt(branches - 1))
+                            % branches, c);
+                }
+            } else {
+                Branch.setHeadBranch(branchName(b));
+                change(c);
+            }
+        }
+        Branch.setHeadBranch(branchName(0));
+        Commit head = Commit.currCommitObj();
+        Commit.writeFiles(head, new ArrayList<>(head.getFileSet()),
+                new ArrayList<>());
+    }
+
+    /** Make commit C on the current branch, changing CHANGES files. */
+    private void change(int c) {
+        Map<String, String> codes = new HashMap<>();
+        for (int k = 0; k < Math.min(CHANGES, files); k += 1) {
+            String name = name(random.nextInt(files));
+            codes.put(name, save(name));
+        }
+        Stage.stageCodes(codes);
+        Commit.create(message(c), EPOCH + c);
+    }
+
+    /** Make commit C the merge of the branch numbered GIVEN into the
+     * one numbered TARGET, taking the given side's version of every
+     * file on which they differ. A plain commit on TARGET is made if
+     * they do not differ. */
+    private void merge(int target, int given, int c) {
+        String into = branchName(target);
+        Branch.setHeadBranch(into);
+        Commit ours = Commit.currCommitObj();
+        String theirsId = Branch.getBranchCode(branchName(given));
+        Map<String, String> codes = new HashMap<>();
+        for (Map.Entry<String, String> e
+                : Commit.getCommit(theirsId).files().entrySet()) {
+            if (!e.getValue().equals(ours.getBlobCode(e.getKey()))) {
+                codes.put(e.getKey(), e.getValue());
+            }
+        }
+        if (codes.isEmpty()) {
+            change(c);
+            return;
+        }
+        Stage.stageCodes(codes);
+        Commit.create(message(c), EPOCH + c, theirsId);
+    }
+
+    /** Save a blob of new contents for the file NAME and return its
+     * code. */
+    private String save(String name) {
+        Blob b = Blob.of(name, contents());
+        String code = b.shaCode();
+        b.saveCode(code);
+        return code;
+    }
+
+    /** Return new contents of a size drawn from the distribution, as
+     * lines of random hexadecimal digits. */
+    private byte[] contents() {
+        long size = Math.round(medianSize
+                * Math.exp(SPREAD * random.nextGaussian()));
+        size = Math.min(size, (long) medianSize * MAX_RATIO);
+        StringBuilder text = new StringBuilder((int) size + 17);
+        while (text.length() < size) {
+            text.append(Long.toHexString(random.nextLong())).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the name of file I. */
+    public static String name(int i) {
+        return String.format("file-%06d.txt", i);
+    }
+
+    /** Return the name of branch B, master being branch 0. */
+    public static String branchName(int b) {
+        return (b == 0) ? "master" : String.format("branch-%03d", b);
+    }
+
+    /** Return the message of commit C. */
+    public static String message(int c) {
+        return "synthetic " + c;
+    }
+
+    /** Return the names of the branches this generator makes. */
+    public List<String> branchNames() {
+        List<String> names = new ArrayList<>();
+        for (int b = 0; b < branches; b += 1) {
+            names.add(branchName(b));
+        }
+        return names;
+    }
+
+    /** Return the number of files. */
+    public int files() {
+        return files;
+    }
+
+    /** Return the median file size in bytes. */
+    public int medianSize() {
+        return medianSize;
+    }
+
+    /** Largest file size as a multiple of the median. */
+    private static final int MAX_RATIO = 64;
+
+    /** The number of files. */
+    private final int files;
+
+    /** The number of commits, the initial one included. */
+    private final int commits;
+
+    /** The number of branches, master included. */
+    private final int branches;
+
+    /** Which branches merge into which. */
+    private final Topology topology;
+
+    /** Share of the commits that are merges. */
+    private final double mergeDensity;
+
+    /** The median file size in bytes. */
+    private final int medianSize;
+
+    /** Seed of RANDOM. */
+    private final long seed;
+
+    /** Source of contents and choices while building. */
+    private Random random;
+}
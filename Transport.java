@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The client side of the protocol spoken by a gitlet Server. A remote
+ * served this way is recorded as gitlet://HOST:PORT. Each connection
+ * carries one transfer: the client names the operation and the branch,
+ * the two sides exchange the commits they already have, and the objects
+ * that are missing travel as a single Pack.
+ * @author AMK Somani
+ */
+public class Transport {
+
+    /** Milliseconds to wait for a server to accept a connection. */
+    static final int CONNECT_TIMEOUT = 10000;
+
+    /** Fetch BRANCH from the server at LOCATION into this repository,
+     * going back at most DEPTH commits if DEPTH is positive. Every local
+     * branch head is offered to the server, which leaves out the history
+     * behind any of them that it has and the blobs that history tracks,
+     * unless this repository is shallow: their history is then
+     * incomplete, and the server sends all of what DEPTH asks for so
+     * that it can be filled in. Every object code the server sends is
+     * checked before it names a file. Returns the SHA1 code of the
+     * fetched head. */
+    public static String fetch(String location, String branch, int depth)
+            throws GitletException {
+        try (Socket socket = connect(location)) {
+            DataOutputStream out = output(socket);
+            DataInputStream in = input(socket);
+            out.writeUTF(Server.FETCH);
+            out.writeUTF(branch);
+            Set<String> haves = Commit.shallowCommits().isEmpty()
+                    ? Branch.allHeads() : new HashSet<>();
+            out.writeInt(haves.size());
+            for (String id : haves) {
+                out.writeUTF(id);
+            }
+            out.writeInt(depth);
+            out.flush();
+            checkStatus(in.readUTF());
+            String head = in.readUTF();
+            Pack.checkId(head);
+            List<String> shallow = new ArrayList<>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String id = in.readUTF();
+                Pack.checkId(id);
+                shallow.add(id);
+            }
+            Commit.addShallow(shallow);
+            Pack.read(in, Repo.gitlet());
+            return head;
+        } catch (IOException excp) {
+            throw Utils.error("Could not reach remote %s.", location);
+        }
+    }
+
+    /** Push the current head branch to BRANCH on the server at
+     * LOCATION. The server's head for BRANCH must be in the history
+     * of the current head, and none of its history is sent again. */
+    public static void push(String location, String branch)
+            throws GitletException {
+        try (Socket socket = connect(location)) {
+            DataOutputStream out = output(socket);
+            DataInputStream in = input(socket);
+            out.writeUTF(Server.PUSH);
+            out.writeUTF(branch);
+            out.flush();
+            checkStatus(in.readUTF());
+            String remoteHead = in.readUTF();
+            Commit head = Commit.currCommitObj();
+            if (!remoteHead.equals("")
+                    && (!Remote.has(remoteHead)
+                    || !Commit.mergeBase(head.sha1(), remoteHead)
+                            .equals(remoteHead))) {
+                out.writeUTF("");
+                out.flush();
+                throw Utils.error(
+                        "Please pull down remote changes before pushing.");
+            }
+            Set<String> heads = remoteHead.equals("")
+                    ? new HashSet<>() : Collections.singleton(remoteHead);
+            Set<String> known = Remote.ancestry(heads, Repo.gitlet());
+            List<Commit> commits = Remote.missingCommits(head.sha1(),
+                    Repo.gitlet(), known::contains);
+            Set<String> exclude =
+                    Remote.knownBlobs(heads, commits, known, Repo.gitlet());
+            out.writeUTF(head.sha1());
+            Pack.write(out, Repo.gitlet(), commits, exclude);
+            checkStatus(in.readUTF());
+        } catch (IOException excp) {
+            throw Utils.error("Could not reach remote %s.", location);
+        }
+    }
+
+    /** Throw the error STATUS sent by a server unless it is Server.OK. */
+    private static void checkStatus(String status) throws GitletException {
+        if (!status.equals(Server.OK)) {
+            throw Utils.error(status);
+        }
+    }
+
+    /** Return a socket connected to the server at LOCATION. */
+    private static Socket connect(String location) throws IOException {
+        URI uri;
+        try {
+            uri = new URI(location);
+        } catch (java.net.URISyntaxException excp) {
+            throw Utils.error("Remote directory not found.");
+        }
+        if (uri.getHost() == null || uri.getPort() < 0) {
+            throw Utils.error("Remote directory not found.");
+        }
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort()),
+                CONNECT_TIMEOUT);
+        return socket;
+    }
+
+    /** Return a buffered data stream writing to SOCKET. */
+    static DataOutputStream output(Socket socket) throws IOException {
+        return new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /** Return a buffered data stream reading from SOCKET. */
+    static DataInputStream input(Socket socket) throws IOException {
+        return new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+    }
+}
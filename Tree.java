@@ -0,0 +1,236 @@
+package gitlet;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/** The files of a commit, as two parallel arrays in order of name: the
+ * names, interned so that every commit tracking a file shares one copy
+ * of its name, and the blob codes, ObjectId.LENGTH bytes each, packed
+ * one after another into a single array. This takes a fraction of the
+ * space of a map from names to hexadecimal codes, and two trees are
+ * compared by walking them together and comparing bytes. A tree never
+ * changes once made, so a commit shares its parent's until it is given
+ * files of its own.
+ * @author AMK Somani
+ */
+final class Tree {
+
+    /** The tree with no files. */
+    static final Tree EMPTY = new Tree(new String[0], new byte[0]);
+
+    /** The tree of the files NAMES, in order and interned, whose codes
+     * are packed in IDS. */
+    private Tree(String[] names, byte[] ids) {
+        this.names = names;
+        this.ids = ids;
+    }
+
+    /** Return the tree of FILES, a mapping from file name to blob
+     * code. */
+    static Tree of(Map<String, String> files) {
+        String[] names = files.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        byte[] ids = new byte[names.length * ObjectId.LENGTH];
+        for (int i = 0; i < names.length; i += 1) {
+            ObjectId.write(files.get(names[i]), ids,
+                    i * ObjectId.LENGTH);
+            names[i] = names[i].intern();
+        }
+        return new Tree(names, ids);
+    }
+
+    /** Return the tree of the files NAMES, which must be in order, the
+     * file NAMES[i] having the code CODES[i]. */
+    static Tree of(String[] names, String[] codes) {
+        byte[] ids = new byte[names.length * ObjectId.LENGTH];
+        for (int i = 0; i < names.length; i += 1) {
+            if (i > 0 && names[i - 1].compareTo(names[i]) >= 0) {
+                throw Utils.error("Files out of order.");
+            }
+            ObjectId.write(codes[i], ids, i * ObjectId.LENGTH);
+            names[i] = names[i].intern();
+        }
+        return new Tree(names, ids);
+    }
+
+    /** Return this tree with the files named in ADDED given the codes
+     * they map to, and the files named in REMOVED taken out. */
+    Tree with(Map<String, String> added, Set<String> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        String[] adds = added.keySet().toArray(new String[0]);
+        Arrays.sort(adds);
+        String[] resultNames = new String[names.length + adds.length];
+        byte[] resultIds = new byte[resultNames.length * ObjectId.LENGTH];
+        int i = 0, j = 0, n = 0;
+        while (i < names.length || j < adds.length) {
+            int c;
+            if (i == names.length) {
+                c = 1;
+            } else if (j == adds.length) {
+                c = -1;
+            } else {
+                c = names[i].compareTo(adds[j]);
+            }
+            if (c < 0) {
+                if (!removed.contains(names[i])) {
+                    System.arraycopy(ids, i * ObjectId.LENGTH, resultIds,
+                            n * ObjectId.LENGTH, ObjectId.LENGTH);
+                    resultNames[n] = names[i];
+                    n += 1;
+                }
+                i += 1;
+                continue;
+            }
+            ObjectId.write(added.get(adds[j]), resultIds,
+                    n * ObjectId.LENGTH);
+            resultNames[n] = adds[j].intern();
+            n += 1;
+            j += 1;
+            if (c == 0) {
+                i += 1;
+            }
+        }
+        return new Tree(Arrays.copyOf(resultNames, n),
+                Arrays.copyOf(resultIds, n * ObjectId.LENGTH));
+    }
+
+    /** Return the number of files. */
+    int size() {
+        return names.length;
+    }
+
+    /** Return the name of file I, numbered in order of name from 0. */
+    String name(int i) {
+        return names[i];
+    }
+
+    /** Return the code of file I in hexadecimal. */
+    String code(int i) {
+        return ObjectId.hex(ids, i * ObjectId.LENGTH);
+    }
+
+    /** Return the number of the file NAME, or a negative number if there
+     * is none. */
+    int find(String name) {
+        return Arrays.binarySearch(names, name);
+    }
+
+    /** Return the code of the file NAME in hexadecimal, or null if there
+     * is no such file. */
+    String code(String name) {
+        int i = find(name);
+        return (i < 0) ? null : code(i);
+    }
+
+    /** Returns true if there is a file NAME. */
+    boolean contains(String name) {
+        return find(name) >= 0;
+    }
+
+    /** Returns true if file I has the code whose hexadecimal form is
+     * CODE. */
+    boolean hasCode(int i, String code) {
+        return ObjectId.matches(ids, i * ObjectId.LENGTH, code);
+    }
+
+    /** Returns true if file I of this tree and file J of OTHER have the
+     * same code. */
+    boolean sameCode(int i, Tree other, int j) {
+        int a = i * ObjectId.LENGTH, b = j * ObjectId.LENGTH;
+        return Arrays.equals(ids, a, a + ObjectId.LENGTH,
+                other.ids, b, b + ObjectId.LENGTH);
+    }
+
+    /** Return a view of this tree as an unmodifiable mapping from file
+     * name to hexadecimal code, which makes each code as it is asked
+     * for. */
+    Map<String, String> asMap() {
+        return new AbstractMap<String, String>() {
+            @Override
+            public String get(Object key) {
+                return (key instanceof String) ? code((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof String && contains((String) key);
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+
+            @Override
+            public Set<String> keySet() {
+                return new AbstractSet<String>() {
+                    @Override
+                    public boolean contains(Object key) {
+                        return containsKey(key);
+                    }
+
+                    @Override
+                    public int size() {
+                        return names.length;
+                    }
+
+                    @Override
+                    public Iterator<String> iterator() {
+                        return Arrays.asList(names).iterator();
+                    }
+                };
+            }
+
+            @Override
+            public Set<Map.Entry<String, String>> entrySet() {
+                return new AbstractSet<Map.Entry<String, String>>() {
+                    @Override
+                    public int size() {
+                        return names.length;
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<String, String>> iterator() {
+                        return new Entries();
+                    }
+                };
+            }
+        };
+    }
+
+    /** The files of this tree, in order, as map entries. */
+    private final class Entries
+            implements Iterator<Map.Entry<String, String>> {
+
+        @Override
+        public boolean hasNext() {
+            return next < names.length;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (next == names.length) {
+                throw new NoSuchElementException();
+            }
+            next += 1;
+            return new AbstractMap.SimpleImmutableEntry<>(names[next - 1],
+                    code(next - 1));
+        }
+
+        /** The number of the next file. */
+        private int next;
+    }
+
+    /** The names of the files, in order. */
+    private final String[] names;
+
+    /** The codes of the files, in the order of their names. */
+    private final byte[] ids;
+}
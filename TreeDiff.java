@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** The differences between two trees of files, such as two commits'.
+ * Both are walked together in order of name, so each file is looked at
+ * once, and codes are compared as bytes; only the codes of files that
+ * differ are made into strings.
+ * @author AMK Somani
+ */
+class TreeDiff {
+
+    /** The ways a file can differ. */
+    enum Kind {
+        /** Only in the second mapping. */
+        ADDED,
+        /** Only in the first mapping. */
+        REMOVED,
+        /** In both, with different codes. */
+        MODIFIED
+    }
+
+    /** The differences from the files FROM to the files TO. */
+    TreeDiff(Tree from, Tree to) {
+        int i = 0, j = 0;
+        while (i < from.size() || j < to.size()) {
+            int c;
+            if (i == from.size()) {
+                c = 1;
+            } else if (j == to.size()) {
+                c = -1;
+            } else {
+                c = from.name(i).compareTo(to.name(j));
+            }
+            if (c < 0) {
+                add(new Entry(from.name(i), Kind.REMOVED, from.code(i),
+                        null));
+                i += 1;
+            } else if (c > 0) {
+                add(new Entry(to.name(j), Kind.ADDED, null, to.code(j)));
+                j += 1;
+            } else {
+                if (!from.sameCode(i, to, j)) {
+                    add(new Entry(from.name(i), Kind.MODIFIED,
+                            from.code(i), to.code(j)));
+                }
+                i += 1;
+                j += 1;
+            }
+        }
+    }
+
+    /** The differences between the files of commits FROM and TO. */
+    TreeDiff(Commit from, Commit to) {
+        this(from.tree(), to.tree());
+    }
+
+    /** Record the difference E. */
+    private void add(Entry e) {
+        entries.add(e);
+        byName.put(e.name(), e);
+    }
+
+    /** Return every difference, in order of file name. */
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /** Return the difference for the file NAME, or null if it is the
+     * same on both sides. */
+    Entry get(String name) {
+        return byName.get(name);
+    }
+
+    /** Returns true if the file NAME was added or modified. */
+    boolean changed(String name) {
+        Entry e = byName.get(name);
+        return e != null && e.kind() != Kind.REMOVED;
+    }
+
+    /** Returns true if the file NAME was removed. */
+    boolean removed(String name) {
+        Entry e = byName.get(name);
+        return e != null && e.kind() == Kind.REMOVED;
+    }
+
+    /** One file that differs. */
+    static final class Entry {
+
+        /** The file NAME differs in way KIND, going from code OLDCODE to
+         * code NEWCODE, either of which is null if the file is absent. */
+        Entry(String name, Kind kind, String oldCode, String newCode) {
+            this.name = name;
+            this.kind = kind;
+            this.oldCode = oldCode;
+            this.newCode = newCode;
+        }
+
+        /** Return the file's name. */
+        String name() {
+            return name;
+        }
+
+        /** Return how the file differs. */
+        Kind kind() {
+            return kind;
+        }
+
+        /** Return the file's code on the first side, or null. */
+        String oldCode() {
+            return oldCode;
+        }
+
+        /** Return the file's code on the second side, or null. */
+        String newCode() {
+            return newCode;
+        }
+
+        /** The file's name. */
+        private final String name;
+
+        /** How the file differs. */
+        private final Kind kind;
+
+        /** The file's codes on each side. */
+        private final String oldCode, newCode;
+    }
+
+    /** Every difference, in order of file name. */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /** Every difference, by file name. */
+    private final HashMap<String, Entry> byName = new HashMap<>();
+}
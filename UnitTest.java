@@ -1,5 +1,26 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -20,6 +41,974 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Returns the result of merging OURS and THEIRS against BASE,
+     * with "!" prepended if there was a conflict. */
+    private static String merge3(String base, String ours, String theirs)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean conflict = Merge3.merge(base.getBytes(), ours.getBytes(),
+                theirs.getBytes(), out);
+        return (conflict ? "!" : "") + out.toString();
+    }
+
+    /** Changes to different lines of a file are both kept. */
+    @Test
+    public void mergeSeparateChangesTest() throws IOException {
+        assertEquals("A\nb\nc\nD\n",
+                merge3("a\nb\nc\nd\n", "A\nb\nc\nd\n", "a\nb\nc\nD\n"));
+        assertEquals("a\nb\n",
+                merge3("a\n", "a\nb\n", "a\nb\n"));
+    }
+
+    /** Different changes to the same lines conflict, and only those
+     * lines are marked. */
+    @Test
+    public void mergeConflictTest() throws IOException {
+        assertEquals("!a\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nc\n",
+                merge3("a\nb\nc\n", "a\nX\nc\n", "a\nY\nc\n"));
+        assertEquals("!<<<<<<< HEAD\n=======\nb\n>>>>>>>\n",
+                merge3("a\n", "", "b\n"));
+    }
+
+    /** Sparse-checkout patterns match file names as globs, and no
+     * patterns match every file. */
+    @Test
+    public void sparseTest() {
+        Sparse s = new Sparse(Arrays.asList("*.java", "docs-?"));
+        assertTrue(s.contains("Main.java"));
+        assertTrue(s.contains("docs-1"));
+        assertFalse(s.contains("docs-12"));
+        assertFalse(s.contains("README.md"));
+        assertTrue(new Sparse(Collections.emptyList()).contains("a"));
+    }
+
+    /** Setting sparse-checkout patterns after a tracked file is touched
+     * saves the file's new time with the index, which later commands
+     * still read. */
+    @Test
+    public void sparseTouchedTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        File a = Utils.join(dir, "a.txt");
+        Utils.writeContents(a, "a");
+        Utils.writeContents(Utils.join(dir, "b.txt"), "b");
+        repo.addAll();
+        repo.commit("first");
+        assertTrue(a.setLastModified(1000000000L));
+        repo.setSparsePatterns(Arrays.asList("b*"));
+        assertFalse(a.exists());
+        assertTrue(repo.status().contains(
+                "=== Modifications Not Staged For Commit ===\n\n"));
+        Index index = Index.read(Utils.join(repo.gitlet(), "index.txt"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000000000L),
+                index.get("a.txt").mtime());
+        Utils.writeContents(Utils.join(dir, "b.txt"), "B");
+        repo.add("b.txt");
+        repo.commit("second");
+    }
+
+    /** A merge keeps the files the sparse-checkout patterns leave out
+     * out of the working directory, whether they merge cleanly or
+     * conflict, and still commits the merged versions. */
+    @Test
+    public void sparseMergeTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "a.txt"), "1\n2\n3\n");
+        Utils.writeContents(Utils.join(dir, "c.txt"), "c\n");
+        Utils.writeContents(Utils.join(dir, "b.java"), "b\n");
+        repo.addAll();
+        repo.commit("first");
+        repo.branch("side");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "one\n2\n3\n");
+        Utils.writeContents(Utils.join(dir, "c.txt"), "ours\n");
+        repo.commitAll("ours");
+        repo.checkoutBranch("side");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "1\n2\nthree\n");
+        Utils.writeContents(Utils.join(dir, "c.txt"), "theirs\n");
+        repo.commitAll("theirs");
+        repo.checkoutBranch("master");
+        repo.setSparsePatterns(Arrays.asList("*.java"));
+        repo.merge("side");
+        assertFalse(Utils.join(dir, "a.txt").exists());
+        assertFalse(Utils.join(dir, "c.txt").exists());
+        assertEquals(Arrays.asList("*.java"), repo.sparsePatterns());
+        Commit merged = repo.log().get(0);
+        assertEquals(Utils.sha1("one\n2\nthree\n".getBytes()),
+                merged.fileCode("a.txt"));
+        assertEquals(Utils.sha1("<<<<<<< HEAD\nours\n=======\ntheirs\n"
+                + ">>>>>>>\n"), merged.fileCode("c.txt"));
+        assertTrue(repo.status().contains(
+                "=== Modifications Not Staged For Commit ===\n\n"));
+    }
+
+    /** Diff shows unstaged changes, then the same as staged ones, and
+     * the change between two commits, as unified hunks or a summary. */
+    @Test
+    public void diffTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "f.txt"), "a\nb\nc\n");
+        repo.add("f.txt");
+        String first = repo.commit("first");
+        Utils.writeContents(Utils.join(dir, "f.txt"), "a\nB\nc\n");
+        String hunk = "diff --gitlet a/f.txt b/f.txt\n--- a/f.txt\n"
+                + "+++ b/f.txt\n@@ -1,3 +1,3 @@\n a\n-b\n+B\n c\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        repo.diff(false, false, out);
+        assertEquals(hunk, out.toString());
+        out.reset();
+        repo.diff(true, false, out);
+        assertEquals("", out.toString());
+        repo.add("f.txt");
+        repo.diff(true, false, out);
+        assertEquals(hunk, out.toString());
+        String second = repo.commit("second");
+        out.reset();
+        repo.diff(first.substring(0, 8), second, true, out);
+        assertEquals(" f.txt | 2 +-\n 1 file changed, 1 insertion(+), "
+                + "1 deletion(-)\n", out.toString());
+    }
+
+    /** A file renamed with a small edit on one side is found as a
+     * rename by diff, and an edit to it on the other side is merged
+     * under its new name. */
+    @Test
+    public void renameTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i += 1) {
+            text.append("line ").append(i).append("\n");
+        }
+        String base = text.toString();
+        Utils.writeContents(Utils.join(dir, "old.txt"), base);
+        repo.add("old.txt");
+        String first = repo.commit("first");
+        repo.branch("side");
+        Utils.join(dir, "old.txt").delete();
+        Utils.writeContents(Utils.join(dir, "new.txt"),
+                base.replace("line 0\n", "zero\n"));
+        repo.remove("old.txt");
+        repo.add("new.txt");
+        String renamed = repo.commit("rename");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        repo.diff(first, renamed, false, out);
+        assertTrue(out.toString().contains(
+                "rename from old.txt\nrename to new.txt\n"));
+        repo.checkoutBranch("side");
+        Utils.writeContents(Utils.join(dir, "old.txt"),
+                base.replace("line 9\n", "nine\n"));
+        repo.add("old.txt");
+        repo.commit("edit");
+        repo.checkoutBranch("master");
+        repo.merge("side");
+        assertFalse(Utils.join(dir, "old.txt").exists());
+        assertEquals(base.replace("line 0\n", "zero\n")
+                        .replace("line 9\n", "nine\n"),
+                Utils.readContentsAsString(Utils.join(dir, "new.txt")));
+        assertFalse(repo.log().get(0).containsFile("old.txt"));
+    }
+
+    /** Checking out a branch leaves alone the files that are the same
+     * on both, but reset puts back a tracked file edited or deleted in
+     * the working directory. */
+    @Test
+    public void resetTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        File a = Utils.join(dir, "a.txt"), b = Utils.join(dir, "b.txt");
+        Utils.writeContents(a, "a");
+        Utils.writeContents(b, "b");
+        repo.addAll();
+        String first = repo.commit("first");
+        repo.branch("side");
+        Utils.writeContents(b, "B");
+        repo.add("b.txt");
+        repo.commit("second");
+        assertTrue(a.setLastModified(1000000000L));
+        repo.checkoutBranch("side");
+        assertEquals(1000000000L, a.lastModified());
+        assertEquals("b", Utils.readContentsAsString(b));
+        Utils.writeContents(a, "edited");
+        b.delete();
+        repo.reset(first);
+        assertEquals("a", Utils.readContentsAsString(a));
+        assertEquals("b", Utils.readContentsAsString(b));
+    }
+
+    /** Checking out a branch with a touched tracked file keeps the
+     * index, with the file's new time, and a corrupt index stops a
+     * checkout instead of being emptied. */
+    @Test
+    public void checkoutIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        File a = Utils.join(dir, "a.txt");
+        Utils.writeContents(a, "a");
+        Utils.writeContents(Utils.join(dir, "b.txt"), "b");
+        repo.addAll();
+        repo.commit("first");
+        repo.branch("side");
+        assertTrue(a.setLastModified(1000000000L));
+        repo.checkoutBranch("side");
+        File file = Utils.join(repo.gitlet(), "index.txt");
+        Index index = Index.read(file);
+        assertEquals(2, index.entries().size());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000000000L),
+                index.get("a.txt").mtime());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file.toPath(), bytes);
+        try {
+            repo.checkoutBranch("master");
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("The index is corrupt.", excp.getMessage());
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+    }
+
+    /** Status and diff, which only hold the shared lock, leave the index
+     * file as it was even when they hash a file again. */
+    @Test
+    public void readOnlyIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        File a = Utils.join(dir, "a.txt");
+        Utils.writeContents(a, "a");
+        repo.add("a.txt");
+        repo.commit("first");
+        File index = Utils.join(repo.gitlet(), "index.txt");
+        byte[] before = Files.readAllBytes(index.toPath());
+        assertTrue(a.setLastModified(1000000000L));
+        assertTrue(repo.status().contains(
+                "=== Modifications Not Staged For Commit ===\n\n"));
+        repo.diff(false, false, new ByteArrayOutputStream());
+        assertArrayEquals(before, Files.readAllBytes(index.toPath()));
+    }
+
+    /** A stage that hashes a touched file again under the exclusive
+     * lock keeps what it learns in memory, leaving the index file whole
+     * until it is saved. */
+    @Test
+    public void unsavedIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        File a = Utils.join(dir, "a.txt");
+        Utils.writeContents(a, "a");
+        repo.add("a.txt");
+        repo.commit("first");
+        File index = Utils.join(repo.gitlet(), "index.txt");
+        byte[] before = Files.readAllBytes(index.toPath());
+        assertTrue(a.setLastModified(1000000000L));
+        Repository outer = Repository.use(repo);
+        Lock lock = Lock.exclusive(repo.gitlet());
+        try {
+            assertEquals(Utils.sha1("a".getBytes()),
+                    Stage.savedStage().workingCode("a.txt"));
+        } finally {
+            lock.close();
+            Repository.use(outer);
+        }
+        assertArrayEquals(before, Files.readAllBytes(index.toPath()));
+        assertEquals(Utils.sha1("a".getBytes()),
+                Index.read(index).get("a.txt").id());
+    }
+
+    /** A blob is saved as MAGIC and the file's bytes, is read back and
+     * copied out whole, and copying out a missing blob is an error. */
+    @Test
+    public void rawBlobTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        byte[] contents = {0, 1, 2, (byte) 0xff, 'x', '\n'};
+        Utils.writeContents(Utils.join(dir, "f.bin"), contents);
+        repo.add("f.bin");
+        String code = Utils.sha1(contents);
+        File objects = Utils.join(repo.gitlet(), "objects");
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write(Blob.MAGIC);
+        raw.write(contents);
+        assertArrayEquals(raw.toByteArray(),
+                Utils.readContents(Utils.join(objects, code + ".txt")));
+        File out = Utils.join(dir, "out.bin");
+        Repository outer = Repository.use(repo);
+        try {
+            Blob.writeTo(code, out);
+            assertArrayEquals(contents, Utils.readContents(out));
+            assertArrayEquals(contents, Blob.contentsOf(code));
+            try {
+                Blob.writeTo(Utils.sha1("missing"), out);
+                fail();
+            } catch (GitletException excp) {
+                assertEquals("Blob " + Utils.sha1("missing")
+                        + " is missing.", excp.getMessage());
+            }
+        } finally {
+            Repository.use(outer);
+        }
+        assertTrue(repo.fsck().ok());
+    }
+
+    /** Index entries survive being saved, both when appended and when
+     * changed in place. */
+    @Test
+    public void indexTest() throws IOException {
+        File f = File.createTempFile("index", ".txt");
+        f.deleteOnExit();
+        String id = Utils.sha1("a");
+        Index index = Index.read(f);
+        index.put("b", id, Index.ADDED, 10, 20);
+        index.put("a", "", 0, 0, -1);
+        index.save();
+        index = Index.read(f);
+        index.put("c", id, Index.REMOVED, 0, -1);
+        index.put("b", id, 0, 11, 21);
+        index.save();
+        index = Index.read(f);
+        assertEquals(id, index.get("b").id());
+        assertEquals(0, index.get("b").flags());
+        assertEquals(21, index.get("b").size());
+        assertEquals("", index.get("a").id());
+        assertEquals(1, index.flagged(Index.REMOVED).size());
+        assertNull(index.get("d"));
+    }
+
+    /** The index file an older version wrote, holding a serialized stage
+     * with b.txt staged for addition and a.txt for removal. */
+    private static final String LEGACY_INDEX =
+            "rO0ABXNyAAxnaXRsZXQuU3RhZ2VmsAUsrmFKOQIAAkwACnJlbW92ZUxpc3R0AB"
+            + "NMamF2YS91dGlsL0hhc2hNYXA7TAAGc2hhTWFwcQB+AAF4cgAPZ2l0bGV0LlN"
+            + "hdmVhYmxll0wr+DaPVZACAAB4cHNyABFqYXZhLnV0aWwuSGFzaE1hcAUH2sHD"
+            + "FmDRAwACRgAKbG9hZEZhY3RvckkACXRocmVzaG9sZHhwP0AAAAAAAAx3CAAAA"
+            + "BAAAAABdAAFYS50eHRxAH4ABnhzcQB+AAQ/QAAAAAAADHcIAAAAEAAAAAF0AA"
+            + "ViLnR4dHQAKGMzNmIyNTYzYjA2MDA1Njc1OWJkZWRhMDZiNTFiM2RmOTdjYjQ"
+            + "yODN4";
+
+    /** An index file holding a stage serialized by an older version is
+     * read as that stage, and the next save writes it as an index. */
+    @Test
+    public void legacyIndexTest() throws IOException {
+        File f = File.createTempFile("index", ".txt");
+        f.deleteOnExit();
+        Files.write(f.toPath(), Base64.getDecoder().decode(LEGACY_INDEX));
+        String code = "c36b2563b060056759bdeda06b51b3df97cb4283";
+        for (int i = 0; i < 2; i += 1) {
+            Index index = Index.read(f);
+            assertEquals(code, index.get("b.txt").id());
+            assertEquals(Index.ADDED, index.get("b.txt").flags());
+            assertEquals(Index.REMOVED, index.get("a.txt").flags());
+            assertEquals(2 + i, index.entries().size());
+            index.put("c.txt", "", 0, 0, -1);
+            index.save();
+        }
+        byte[] magic = Arrays.copyOf(Files.readAllBytes(f.toPath()),
+                Index.MAGIC.length);
+        assertArrayEquals(Index.MAGIC, magic);
+    }
+
+    /** Fetch copies the missing commits and blobs of a remote branch,
+     * points NAME/BRANCH at its head, and copies again only what an
+     * interrupted fetch left out. */
+    @Test
+    public void fetchTest() throws IOException {
+        File dir1 = Files.createTempDirectory("gitlet").toFile();
+        File dir2 = Files.createTempDirectory("gitlet").toFile();
+        Repository remote = Repository.init(dir1);
+        Repository local = Repository.init(dir2);
+        Utils.writeContents(Utils.join(dir1, "a.txt"), "a");
+        remote.add("a.txt");
+        remote.commit("first");
+        Utils.writeContents(Utils.join(dir1, "a.txt"), "b");
+        remote.add("a.txt");
+        String head = remote.commit("second");
+        local.addRemote("origin", remote.gitlet().getPath());
+        assertEquals(head, local.fetch("origin", "master", 0));
+        File branch = Utils.join(local.gitlet(), "branches", "origin",
+                "master.txt");
+        assertEquals(head, Utils.readContentsAsString(branch));
+        assertTrue(local.fsck().ok());
+        File commit = Utils.join(local.gitlet(), "objects", head + ".txt");
+        File blob = Utils.join(local.gitlet(), "objects",
+                Utils.sha1("b".getBytes()) + ".txt");
+        assertTrue(commit.delete() && blob.delete());
+        assertEquals(head, local.fetch("origin", "master", 0));
+        assertTrue(commit.isFile() && blob.isFile());
+        assertTrue(local.fsck().ok());
+    }
+
+    /** The shallow and sparse-checkout lists a repository caches are
+     * read again once another process changes their files. */
+    @Test
+    public void stampedCacheTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        repo.add("a.txt");
+        String id = repo.commit("first");
+        Repository outer = Repository.use(repo);
+        try {
+            assertFalse(Commit.shallowCommits().contains(id));
+            assertTrue(Sparse.includes("a.txt"));
+            Utils.writeContents(Utils.join(repo.gitlet(), "shallow.txt"),
+                    id + "\n");
+            Utils.writeContents(Utils.join(repo.gitlet(),
+                    "sparse-checkout.txt"), "*.java\n");
+            assertTrue(Commit.shallowCommits().contains(id));
+            assertFalse(Sparse.includes("a.txt"));
+            Utils.join(repo.gitlet(), "shallow.txt").delete();
+            assertTrue(Commit.shallowCommits().isEmpty());
+        } finally {
+            Repository.use(outer);
+        }
+    }
+
+    /** A repository keeps the commits it reads to itself, forgets them
+     * once gc prunes them, and keeps no more than COMMITS. */
+    @Test
+    public void commitCacheTest() throws IOException {
+        File dir1 = Files.createTempDirectory("gitlet").toFile();
+        File dir2 = Files.createTempDirectory("gitlet").toFile();
+        Repository one = Repository.init(dir1);
+        Repository two = Repository.init(dir2);
+        one.branch("other");
+        one.checkoutBranch("other");
+        Utils.writeContents(Utils.join(dir1, "a.txt"), "a");
+        one.add("a.txt");
+        String id = one.commit("gone");
+        one.checkoutBranch("master");
+        one.removeBranch("other");
+        Commit c = one.loaded(id);
+        assertNotNull(c);
+        assertNull(two.loaded(id));
+        one.gc(true, 0);
+        assertNull(one.loaded(id));
+        for (int i = 0; i <= Repository.COMMITS; i += 1) {
+            two.remember(Integer.toString(i), c);
+        }
+        assertNull(two.loaded("0"));
+        assertSame(c, two.loaded(Integer.toString(Repository.COMMITS)));
+    }
+
+    /** A fetch with a depth copies only that many commits and marks the
+     * oldest shallow, so merge-base stops there; deeper fetches fill the
+     * history in and move the mark until none is left. */
+    @Test
+    public void shallowTest() throws IOException {
+        File dir1 = Files.createTempDirectory("gitlet").toFile();
+        File dir2 = Files.createTempDirectory("gitlet").toFile();
+        Repository remote = Repository.init(dir1);
+        Repository local = Repository.init(dir2);
+        String[] ids = new String[3];
+        for (int i = 0; i < ids.length; i += 1) {
+            Utils.writeContents(Utils.join(dir1, "a.txt"), "v" + i);
+            remote.add("a.txt");
+            ids[i] = remote.commit("commit " + i);
+        }
+        local.addRemote("origin", remote.gitlet().getPath());
+        File shallow = Utils.join(local.gitlet(), "shallow.txt");
+        File objects = Utils.join(local.gitlet(), "objects");
+        local.fetch("origin", "master", 1);
+        assertEquals(ids[2] + "\n", Utils.readContentsAsString(shallow));
+        assertFalse(Utils.join(objects, ids[1] + ".txt").exists());
+        assertEquals("", local.mergeBase("master", "origin/master"));
+        assertTrue(local.fsck().ok());
+        local.fetch("origin", "master", 2);
+        assertEquals(ids[1] + "\n", Utils.readContentsAsString(shallow));
+        assertFalse(Utils.join(objects, ids[0] + ".txt").exists());
+        local.fetch("origin", "master", 0);
+        assertFalse(shallow.exists());
+        assertEquals(local.log().get(0).sha1(),
+                local.mergeBase("master", "origin/master"));
+        assertTrue(local.fsck().ok());
+    }
+
+    /** A branch fetched and pushed through a server arrives whole, and
+     * the server turns away branch names outside its branches
+     * directory. */
+    @Test
+    public void transportTest() throws IOException {
+        File dir1 = Files.createTempDirectory("gitlet").toFile();
+        File dir2 = Files.createTempDirectory("gitlet").toFile();
+        Repository served = Repository.init(dir1);
+        Utils.writeContents(Utils.join(dir1, "a.txt"), "a");
+        served.add("a.txt");
+        String head = served.commit("first");
+        Server server = served.serve(0);
+        server.start();
+        try {
+            Repository client = Repository.init(dir2);
+            client.addRemote("origin", server.location());
+            assertEquals(head, client.fetch("origin", "master", 0));
+            assertTrue(client.fsck().ok());
+            Utils.writeContents(Utils.join(dir2, "b.txt"), "b");
+            client.add("b.txt");
+            String pushed = client.commit("second");
+            client.push("origin", "side");
+            assertEquals(pushed, Utils.readContentsAsString(
+                    Utils.join(served.gitlet(), "branches", "side.txt")));
+            assertTrue(served.fsck().ok());
+            try {
+                client.push("origin", "../../evil");
+                fail();
+            } catch (GitletException excp) {
+                assertEquals(Server.BAD_BRANCH, excp.getMessage());
+            }
+            assertFalse(Utils.join(dir1, "evil.txt").exists());
+        } finally {
+            server.close();
+        }
+    }
+
+    /** A branch that forked from an older commit than the one a client
+     * offers is fetched as only the commits and blobs since the fork. */
+    @Test
+    public void forkFetchTest() throws IOException {
+        File dir1 = Files.createTempDirectory("gitlet").toFile();
+        File dir2 = Files.createTempDirectory("gitlet").toFile();
+        File scratch = Files.createTempDirectory("gitlet").toFile();
+        Repository served = Repository.init(dir1);
+        Utils.writeContents(Utils.join(dir1, "a.txt"), "a");
+        served.add("a.txt");
+        served.commit("first");
+        served.branch("side");
+        Utils.writeContents(Utils.join(dir1, "a.txt"), "A");
+        served.add("a.txt");
+        String head = served.commit("second");
+        served.checkoutBranch("side");
+        Utils.writeContents(Utils.join(dir1, "c.txt"), "c");
+        served.add("c.txt");
+        String fork = served.commit("fork");
+        served.checkoutBranch("master");
+        Server server = served.serve(0);
+        server.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                server.port())) {
+            DataOutputStream out = Transport.output(socket);
+            DataInputStream in = Transport.input(socket);
+            out.writeUTF(Server.FETCH);
+            out.writeUTF("side");
+            out.writeInt(1);
+            out.writeUTF(head);
+            out.writeInt(0);
+            out.flush();
+            assertEquals(Server.OK, in.readUTF());
+            assertEquals(fork, in.readUTF());
+            assertEquals(0, in.readInt());
+            Utils.join(scratch, "objects").mkdir();
+            assertEquals(2, Pack.read(in, scratch));
+            assertTrue(Utils.join(scratch, "objects", fork + ".txt")
+                    .exists());
+            assertTrue(Utils.join(scratch, "objects",
+                    Utils.sha1("c".getBytes()) + ".txt").exists());
+        } finally {
+            server.close();
+        }
+    }
+
+    /** A pack naming an object outside the objects directory, or an
+     * object by a code not its own, adds nothing. */
+    @Test
+    public void packCheckTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        String wrong = Utils.sha1("x");
+        for (String id : Arrays.asList("../../evil", wrong)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream data = new DataOutputStream(
+                    new DeflaterOutputStream(bytes))) {
+                data.writeUTF(id);
+                data.writeLong(Blob.MAGIC.length + 4);
+                data.write(Blob.MAGIC);
+                data.writeBytes("evil");
+                data.writeUTF("");
+            }
+            try {
+                Pack.read(new ByteArrayInputStream(bytes.toByteArray()),
+                        repo.gitlet());
+                fail();
+            } catch (GitletException excp) {
+                assertTrue(excp.getMessage().contains(id));
+            }
+        }
+        assertFalse(Utils.join(dir, "evil.txt").exists());
+        assertFalse(Utils.join(repo.gitlet(), "objects", wrong + ".txt")
+                .exists());
+    }
+
+    /** Run gitlet with the arguments ARGS in the directory DIR, with
+     * the environment variable GITLET_METRICS set to METRICS. */
+    private static void runWithMetrics(File dir, String metrics,
+                                       String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Utils.join(new File(System.getProperty("java.home")), "bin",
+                        "java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder pb = new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true);
+        pb.environment().put("GITLET_METRICS", metrics);
+        Process p = pb.start();
+        p.getInputStream().readAllBytes();
+        assertEquals(0, p.waitFor());
+    }
+
+    /** With GITLET_METRICS naming a file, each command appends to it a
+     * line of JSON counting the operations it did, and without it
+     * nothing is counted. */
+    @Test
+    public void metricsTest() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File metrics = File.createTempFile("metrics", ".json");
+        metrics.delete();
+        metrics.deleteOnExit();
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a\n");
+        runWithMetrics(dir, metrics.getPath(), "init");
+        runWithMetrics(dir, metrics.getPath(), "add", "a.txt");
+        List<String> lines = Files.readAllLines(metrics.toPath());
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"command\":\"init\","));
+        assertTrue(lines.get(1).startsWith("{\"command\":\"add\","));
+        assertTrue(lines.get(1).contains(
+                "\"writeObject\":{\"calls\":1,\"bytes\":6,"));
+        assertTrue(lines.get(1).matches(
+                ".*\"sha1\":\\{\"calls\":[1-9].*\\}\\}\\}"));
+        if (!Metrics.ENABLED) {
+            Metrics.record(Metrics.Op.SHA1, Metrics.start(), 10);
+            assertTrue(Metrics.summary("a\"b", 5).startsWith(
+                    "{\"command\":\"a\\\"b\",\"nanos\":5,\"ops\":{"
+                    + "\"readObject\":{\"calls\":0,"));
+            assertTrue(Metrics.summary("x", 0).contains(
+                    "\"sha1\":{\"calls\":0,\"bytes\":0,\"nanos\":0}"));
+        }
+    }
+
+    /** Two repositories opened in one program keep apart. */
+    @Test
+    public void repositoryTest() throws IOException {
+        File dir1 = Files.createTempDirectory("gitlet").toFile();
+        File dir2 = Files.createTempDirectory("gitlet").toFile();
+        Repository one = Repository.init(dir1);
+        Repository two = Repository.init(dir2);
+        Utils.writeContents(Utils.join(dir1, "a.txt"), "a");
+        one.add("a.txt");
+        String id = one.commit("first");
+        assertEquals(2, one.log().size());
+        assertEquals(1, two.log().size());
+        assertEquals(Arrays.asList(id), one.find("first"));
+        assertTrue(two.find("first").isEmpty());
+        assertTrue(two.status().contains("=== Untracked Files ===\n"));
+        two.branch("other");
+        assertTrue(two.status().contains("other\n"));
+        assertFalse(one.status().contains("other\n"));
+    }
+
+    /** A recording that turns on the gitlet events sees add hash the
+     * file and save the index, and commit write its commit and move the
+     * branch to it. */
+    @Test
+    public void eventsTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        File jfr = File.createTempFile("gitlet", ".jfr");
+        jfr.deleteOnExit();
+        String id;
+        try (Recording r = new Recording()) {
+            for (String name : new String[] {"gitlet.BlobHash",
+                "gitlet.Index", "gitlet.ObjectWrite", "gitlet.RefUpdate"}) {
+                r.enable(name);
+            }
+            r.start();
+            repo.add("a.txt");
+            id = repo.commit("first");
+            r.stop();
+            r.dump(jfr.toPath());
+        }
+        Map<String, List<RecordedEvent>> events = new HashMap<>();
+        for (RecordedEvent e : RecordingFile.readAllEvents(jfr.toPath())) {
+            events.computeIfAbsent(e.getEventType().getName(),
+                    k -> new ArrayList<>()).add(e);
+        }
+        assertEquals("a.txt",
+                events.get("gitlet.BlobHash").get(0).getString("path"));
+        assertTrue(events.get("gitlet.Index").stream().anyMatch(
+                e -> e.getString("operation").equals("save")));
+        assertTrue(events.get("gitlet.ObjectWrite").stream().anyMatch(
+                e -> e.getString("id").equals(id)
+                        && e.getString("type").equals("commit")));
+        assertTrue(events.get("gitlet.RefUpdate").stream().anyMatch(
+                e -> e.getString("value").equals(id)));
+    }
+
+    /** Garbage collection counts the commits of a removed branch and a
+     * blob replaced on the stage, and prunes only those. */
+    @Test
+    public void gcTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        repo.add("a.txt");
+        repo.commit("first");
+        repo.branch("other");
+        repo.checkoutBranch("other");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "b");
+        repo.add("a.txt");
+        repo.commit("second");
+        repo.checkoutBranch("master");
+        repo.removeBranch("other");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "c");
+        repo.add("a.txt");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "d");
+        repo.add("a.txt");
+        Gc gc = repo.gc(false, 0);
+        assertEquals(4, gc.reachable());
+        assertEquals(3, gc.unreachable());
+        assertEquals(0, gc.pruned());
+        assertEquals(3, repo.gc(true, 0).pruned());
+        assertEquals(0, repo.gc(true, 0).unreachable());
+        assertEquals(2, repo.log().size());
+    }
+
+    /** Fsck reports the commit of a removed branch as dangling and a
+     * blob whose contents were changed as corrupt. */
+    @Test
+    public void fsckTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        repo.add("a.txt");
+        repo.commit("first");
+        assertTrue(repo.fsck().ok());
+        repo.branch("other");
+        repo.checkoutBranch("other");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "b");
+        repo.add("a.txt");
+        String id = repo.commit("second");
+        repo.checkoutBranch("master");
+        repo.removeBranch("other");
+        Fsck fsck = repo.fsck();
+        assertTrue(fsck.ok());
+        assertEquals("commit", fsck.dangling().get(id));
+        String blob = repo.log().get(0).fileCode("a.txt");
+        File f = Utils.join(repo.gitlet(), "objects", blob + ".txt");
+        Utils.writeContents(f, Utils.readContents(f), "x");
+        fsck = repo.fsck();
+        assertFalse(fsck.ok());
+        assertEquals(Collections.singleton(blob), fsck.corrupt());
+        assertTrue(fsck.missing().isEmpty());
+    }
+
+    /** Blame gives each line to the commit that last changed it, across
+     * a merge and past commits that leave the file alone. */
+    @Test
+    public void blameTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        File f = Utils.join(dir, "f.txt");
+        Utils.writeContents(f, "a\nb\nc\n");
+        repo.add("f.txt");
+        String first = repo.commit("first");
+        repo.branch("side");
+        Utils.writeContents(f, "a\nB\nc\n");
+        repo.add("f.txt");
+        String second = repo.commit("second");
+        repo.checkoutBranch("side");
+        Utils.writeContents(f, "a\nb\nc\nd\n");
+        repo.add("f.txt");
+        String side = repo.commit("side");
+        Utils.writeContents(Utils.join(dir, "g.txt"), "g");
+        repo.add("g.txt");
+        repo.commit("other file");
+        repo.checkoutBranch("master");
+        repo.merge("side");
+        Blame blame = repo.blame("f.txt");
+        assertEquals(4, blame.size());
+        assertEquals(first, blame.commit(0));
+        assertEquals(second, blame.commit(1));
+        assertEquals(first, blame.commit(2));
+        assertEquals(side, blame.commit(3));
+        assertEquals("B", blame.line(1));
+    }
+
+    /** Objects are written through the tmp directory, which is left
+     * empty, and an object whose writing fails never appears. */
+    @Test
+    public void atomicWriteTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        repo.add("a.txt");
+        repo.commit("first");
+        File tmp = Utils.join(repo.gitlet(), "tmp");
+        assertEquals(0, Utils.plainFilenamesIn(tmp).size());
+        assertTrue(repo.fsck().ok());
+        assertTrue(tmp.delete());
+        Utils.writeContents(tmp, "");
+        Utils.writeContents(Utils.join(dir, "b.txt"), "b");
+        try {
+            repo.add("b.txt");
+            fail();
+        } catch (GitletException excp) {
+            assertFalse(Utils.join(repo.gitlet(), "objects",
+                    Utils.sha1("b".getBytes()) + ".txt").exists());
+        }
+    }
+
+    /** The same contents under two names are stored as one blob. */
+    @Test
+    public void dedupTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "a.txt"), "same");
+        Utils.writeContents(Utils.join(dir, "b.txt"), "same");
+        repo.add("a.txt");
+        repo.add("b.txt");
+        repo.commit("first");
+        ObjectCount count = repo.countObjects();
+        assertEquals(1, count.blobs());
+        assertEquals(2, count.versions());
+        assertEquals(1, count.deduplicated());
+        assertEquals(0, repo.migrate().commitsRewritten());
+    }
+
+    /** Objects an older version serialized, each after its SHA1 code:
+     * the initial commit, the commit "one" adding a.txt holding "a\n",
+     * and the blob of a.txt. */
+    private static final String[][] LEGACY_OBJECTS = {
+        {"c4d596fbe230335b816a3db1d99d3b37229b1f0f",
+            "rO0ABXNyAA1naXRsZXQuQ29tbWl0rspWq8qariACAAZKAAV0aW1lckwABV9TSE"
+            + "ExdAASTGphdmEvbGFuZy9TdHJpbmc7TAADbXNncQB+AAFMAAZwYXJlbnRxAH4A"
+            + "AUwADHNlY29uZFBhcmVudHEAfgABTAAGc2hhTWFwdAATTGphdmEvdXRpbC9IYX"
+            + "NoTWFwO3hyAA9naXRsZXQuU2F2ZWFibGWXTCv4No9VkAIAAHhwAAAAAAAAAAB0"
+            + "AChjNGQ1OTZmYmUyMzAzMzViODE2YTNkYjFkOTlkM2IzNzIyOWIxZjBmdAAOaW"
+            + "5pdGlhbCBjb21taXR0AAB0AABzcgARamF2YS51dGlsLkhhc2hNYXAFB9rBwxZg"
+            + "0QMAAkYACmxvYWRGYWN0b3JJAAl0aHJlc2hvbGR4cD9AAAAAAAAAdwgAAAAQAA"
+            + "AAAHg="},
+        {"394118af0d1747211ff119f9a2baa5521cf286c3",
+            "rO0ABXNyAA1naXRsZXQuQ29tbWl0rspWq8qariACAAZKAAV0aW1lckwABV9TSE"
+            + "ExdAASTGphdmEvbGFuZy9TdHJpbmc7TAADbXNncQB+AAFMAAZwYXJlbnRxAH4A"
+            + "AUwADHNlY29uZFBhcmVudHEAfgABTAAGc2hhTWFwdAATTGphdmEvdXRpbC9IYX"
+            + "NoTWFwO3hyAA9naXRsZXQuU2F2ZWFibGWXTCv4No9VkAIAAHhwAAAAAGrVfaR0"
+            + "ACgzOTQxMThhZjBkMTc0NzIxMWZmMTE5ZjlhMmJhYTU1MjFjZjI4NmMzdAADb2"
+            + "5ldAAoYzRkNTk2ZmJlMjMwMzM1YjgxNmEzZGIxZDk5ZDNiMzcyMjliMWYwZnQA"
+            + "AHNyABFqYXZhLnV0aWwuSGFzaE1hcAUH2sHDFmDRAwACRgAKbG9hZEZhY3Rvck"
+            + "kACXRocmVzaG9sZHhwP0AAAAAAAAx3CAAAABAAAAABdAAFYS50eHR0AChjYmQx"
+            + "N2VmMWFjNzc0OTA5MGI2N2YxNDU2MzY2MTAwMjg5NmFhODQyeA=="},
+        {"cbd17ef1ac7749090b67f14563661002896aa842",
+            "rO0ABXNyAAtnaXRsZXQuQmxvYghhvTpCt0N6AgAETAAIY29udGVudHN0ABJMam"
+            + "F2YS9sYW5nL1N0cmluZztMAARmaWxldAAOTGphdmEvaW8vRmlsZTtMAAhmaWxl"
+            + "bmFtZXEAfgABWwAGc2VyaWFsdAACW0J4cgAPZ2l0bGV0LlNhdmVhYmxll0wr+D"
+            + "aPVZACAAB4cHQAAmEKc3IADGphdmEuaW8uRmlsZQQtpEUODeT/AwABTAAEcGF0"
+            + "aHEAfgABeHB0AAVhLnR4dHcCAC94dAAFYS50eHR1cgACW0Ks8xf4BghU4AIAAH"
+            + "hwAAAAAmEK"}
+    };
 
+    /** Commits and blobs serialized by an older version are read, and
+     * migrate writes them again under their new codes. */
+    @Test
+    public void legacyObjectsTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        for (String[] obj : LEGACY_OBJECTS) {
+            Files.write(Utils.join(repo.gitlet(), "objects",
+                    obj[0] + ".txt").toPath(),
+                    Base64.getDecoder().decode(obj[1]));
+        }
+        String initial = LEGACY_OBJECTS[0][0], head = LEGACY_OBJECTS[1][0];
+        Utils.writeContents(Utils.join(repo.gitlet(), "branches",
+                "master.txt"), head);
+        List<Commit> log = repo.log();
+        assertEquals(2, log.size());
+        assertEquals(head, log.get(0).sha1());
+        assertEquals(initial, log.get(1).sha1());
+        assertEquals(LEGACY_OBJECTS[2][0], log.get(0).fileCode("a.txt"));
+        Repository outer = Repository.use(repo);
+        try {
+            assertEquals("a\n", Blob.get(LEGACY_OBJECTS[2][0]).contents());
+        } finally {
+            Repository.use(outer);
+        }
+        assertEquals(2, repo.migrate().commitsRewritten());
+        assertEquals(Utils.sha1("a\n".getBytes()),
+                repo.log().get(0).fileCode("a.txt"));
+        assertTrue(repo.fsck().ok());
+    }
+
+    /** A commit is named by the hash of the file it is saved in, and
+     * reads back with the same files. */
+    @Test
+    public void commitEncodingTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(Utils.join(dir, "b.txt"), "b");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        repo.add("b.txt");
+        repo.add("a.txt");
+        String id = repo.commit("first");
+        byte[] bytes = Utils.readContents(
+                Utils.join(dir, ".gitlet", "objects", id + ".txt"));
+        assertEquals(id, Utils.sha1(bytes));
+        Commit c = Commit.decode(id, bytes);
+        assertEquals(2, c.files().size());
+        assertEquals(Utils.sha1("a".getBytes()), c.fileCode("a.txt"));
+        assertTrue(repo.fsck().ok());
+    }
 
+    /** A tree keeps its files in order, packs their codes, and gives
+     * the next commit's files after additions and removals. */
+    @Test
+    public void treeTest() {
+        String x = Utils.sha1("x"), y = Utils.sha1("y");
+        byte[] packed = new byte[ObjectId.LENGTH];
+        ObjectId.write(x, packed, 0);
+        assertEquals(x, ObjectId.hex(packed, 0));
+        assertTrue(ObjectId.matches(packed, 0, x));
+        try {
+            ObjectId.write(x.substring(1) + "g", packed, 0);
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Not an object id: " + x.substring(1) + "g",
+                    excp.getMessage());
+        }
+        Map<String, String> files = new HashMap<>();
+        files.put("b.txt", x);
+        files.put("a.txt", x);
+        Tree tree = Tree.of(files);
+        assertEquals("a.txt", tree.name(0));
+        assertTrue(tree.sameCode(0, tree, 1));
+        Tree next = tree.with(Collections.singletonMap("c.txt", y),
+                Collections.singleton("a.txt"));
+        assertEquals(2, next.size());
+        assertEquals(y, next.code("c.txt"));
+        assertFalse(next.contains("a.txt"));
+        List<TreeDiff.Entry> diff = new TreeDiff(tree, next).entries();
+        assertEquals(2, diff.size());
+        assertEquals(TreeDiff.Kind.REMOVED, diff.get(0).kind());
+        assertEquals(TreeDiff.Kind.ADDED, diff.get(1).kind());
+    }
+
+    /** Adding every file stages each once, stores equal contents once,
+     * and commit -a picks up changes and deletions. */
+    @Test
+    public void addAllTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Repository repo = Repository.init(dir);
+        for (int i = 0; i < 100; i += 1) {
+            Utils.writeContents(Utils.join(dir, i + ".txt"), "" + i % 10);
+        }
+        repo.addAll();
+        repo.commit("first");
+        assertEquals(10, repo.countObjects().blobs());
+        assertEquals(100, repo.countObjects().versions());
+        Utils.writeContents(Utils.join(dir, "0.txt"), "changed");
+        Utils.join(dir, "1.txt").delete();
+        repo.commitAll("second");
+        Map<String, String> files = repo.log().get(0).files();
+        assertEquals(99, files.size());
+        assertEquals(Utils.sha1("changed".getBytes()), files.get("0.txt"));
+    }
+}
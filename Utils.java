@@ -14,9 +14,15 @@ import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /** Assorted utilities.
@@ -32,13 +38,19 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        long start = Metrics.start();
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long bytes = 0;
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    bytes += ((byte[]) val).length;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] b =
+                        ((String) val).getBytes(StandardCharsets.UTF_8);
+                    md.update(b);
+                    bytes += b.length;
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
@@ -47,6 +59,7 @@ class Utils {
             for (byte b : md.digest()) {
                 result.format("%02x", b);
             }
+            Metrics.record(Metrics.Op.SHA1, start, bytes);
             return result.toString();
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
@@ -136,11 +149,15 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Metrics.start();
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            if (Metrics.ENABLED) {
+                Metrics.record(Metrics.Op.READ_OBJECT, start, file.length());
+            }
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -150,7 +167,10 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        long start = Metrics.start();
+        byte[] bytes = serialize(obj);
+        writeContents(file, bytes);
+        Metrics.record(Metrics.Op.WRITE_OBJECT, start, bytes.length);
     }
 
     /* DIRECTORIES */
@@ -168,11 +188,19 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Metrics.start();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
         } else {
             Arrays.sort(files);
+            if (Metrics.ENABLED) {
+                long bytes = 0;
+                for (String f : files) {
+                    bytes += f.length();
+                }
+                Metrics.record(Metrics.Op.LIST_FILES, start, bytes);
+            }
             return Arrays.asList(files);
         }
     }
@@ -218,6 +246,41 @@ class Utils {
 
 
 
+    /* PARALLEL WORK */
+
+    /** Run every one of TASKS, using at most THREADS threads, and return
+     *  once all are done. Each task works in the calling thread's
+     *  repository. The first GitletException thrown by a task is
+     *  rethrown; any other failure is reported as an error. */
+    static void runAll(List<Callable<Void>> tasks, int threads) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(threads, tasks.size()));
+        try {
+            List<Callable<Void>> bound = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                bound.add(Repository.bind(task));
+            }
+            for (Future<Void> f : pool.invokeAll(bound)) {
+                f.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Interrupted.");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof GitletException) {
+                throw (GitletException) excp.getCause();
+            }
+            throw error(String.valueOf(excp.getCause().getMessage()));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
@@ -0,0 +1,162 @@
+package gitlet.bench;
+
+import gitlet.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/** A repository generated in a temporary directory for benchmarks.
+ * The branch master has a history of DEPTH commits over FILES files of
+ * about SIZE bytes each; each commit changes a few files, and a share
+ * MERGEDENSITY of them are merges of a short side branch. The branch
+ * topic leaves master a few commits before its head and changes other
+ * files, so it can be merged cleanly, and the branch other changes a
+ * tenth of the files, for checkouts. Contents come from a fixed seed,
+ * so the same parameters always give the same repository.
+ * @author AMK Somani
+ */
+class Fixture {
+
+    /** Files changed by each generated commit. */
+    static final int CHANGES = 4;
+
+    /** Commits on topic and on master after they part. */
+    static final int DIVERGENCE = 3;
+
+    /** A repository with FILES files of SIZE bytes, a history DEPTH
+     * commits deep of which a share MERGEDENSITY are merges. */
+    Fixture(int files, int size, int depth, double mergeDensity)
+            throws IOException {
+        this.files = files;
+        this.size = size;
+        this.dir = Files.createTempDirectory("gitlet-bench").toFile();
+        this.repo = Repository.init(dir);
+        this.random = new Random(files * 31L + size * 17L + depth);
+
+        for (int i = 0; i < files; i += 1) {
+            write(i);
+            repo.add(name(i));
+        }
+        repo.commit("generated 0");
+        for (int c = 1; c < depth; c += 1) {
+            if (random.nextDouble() < mergeDensity) {
+                mergeSide(c);
+            } else {
+                change(CHANGES);
+                repo.commit("generated " + c);
+            }
+        }
+
+        repo.branch("other");
+        repo.checkoutBranch("other");
+        change(Math.max(1, files / 10));
+        repo.commit("other");
+        repo.checkoutBranch("master");
+
+        repo.branch("topic");
+        repo.checkoutBranch("topic");
+        for (int c = 0; c < DIVERGENCE; c += 1) {
+            change(CHANGES, 0, files / 2);
+            repo.commit("topic " + c);
+        }
+        repo.checkoutBranch("master");
+        for (int c = 0; c < DIVERGENCE; c += 1) {
+            change(CHANGES, files / 2, files);
+            repo.commit("master " + c);
+        }
+    }
+
+    /** Make commit C of master the merge of a side branch of one commit
+     * with one commit of master, touching different files. */
+    private void mergeSide(int c) {
+        String side = "side-" + c;
+        repo.branch(side);
+        repo.checkoutBranch(side);
+        change(CHANGES, 0, files / 2);
+        repo.commit("side " + c);
+        repo.checkoutBranch("master");
+        change(CHANGES, files / 2, files);
+        repo.commit("generated " + c);
+        repo.merge(side);
+        repo.removeBranch(side);
+    }
+
+    /** Change and stage N files chosen from all of them. */
+    private void change(int n) {
+        change(n, 0, files);
+    }
+
+    /** Change and stage N files chosen from those numbered FROM up to
+     * but not including TO. */
+    private void change(int n, int from, int to) {
+        int span = Math.max(1, to - from);
+        for (int k = 0; k < n; k += 1) {
+            int i = Math.min(files - 1, from + random.nextInt(span));
+            write(i);
+            repo.add(name(i));
+        }
+    }
+
+    /** Give file I new contents. */
+    void write(int i) {
+        StringBuilder text = new StringBuilder(size + 16);
+        while (text.length() < size) {
+            text.append(Long.toHexString(random.nextLong())).append('\n');
+        }
+        try {
+            Files.write(new File(dir, name(i)).toPath(),
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Return the name of file I. */
+    static String name(int i) {
+        return String.format("file-%06d.txt", i);
+    }
+
+    /** Return the generated repository. */
+    Repository repo() {
+        return repo;
+    }
+
+    /** Return the number of files. */
+    int files() {
+        return files;
+    }
+
+    /** Remove the repository and its directory. */
+    void delete() throws IOException {
+        deleteAll(dir);
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it. */
+    private static void deleteAll(File file) throws IOException {
+        File[] entries = file.listFiles();
+        if (entries != null) {
+            for (File f : entries) {
+                deleteAll(f);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /** The number of files. */
+    private final int files;
+
+    /** The size of each file in bytes. */
+    private final int size;
+
+    /** The working directory. */
+    private final File dir;
+
+    /** The repository in DIR. */
+    private final Repository repo;
+
+    /** Source of the generated contents and choices. */
+    private final Random random;
+}
@@ -0,0 +1,279 @@
+package gitlet.bench;
+
+import gitlet.Repository;
+import gitlet.Synthetic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** A load test that generates a synthetic repository and replays a
+ * mixed workload of commands against it, then reports the latency
+ * percentiles of each command. Usage:
+ *
+ *     java gitlet.bench.LoadTest [NAME=VALUE]...
+ *
+ * where each NAME is one of files, commits, branches, topology
+ * (feature or mesh), merges (the merge density), size (the median file
+ * size), ops (the number of commands to run), seed, dir (where to
+ * generate the repository, by default a temporary directory that is
+ * removed afterwards) and mix. The mix gives the relative weight of
+ * each command, as in status:40,log:20,global-log:5,find:5,checkout:10,
+ * commit:15,merge:5, which is the default. A commit changes, adds and
+ * commits one file; a merge merges another branch into the current
+ * one and is then undone by a reset, which is not timed.
+ * @author AMK Somani
+ */
+public class LoadTest {
+
+    /** The commands a workload can hold. */
+    static final List<String> COMMANDS = Arrays.asList("status", "log",
+            "global-log", "find", "checkout", "commit", "merge");
+
+    /** Run the load test described by ARGS. */
+    public static void main(String... args) throws IOException {
+        Map<String, String> opts = new HashMap<>();
+        opts.put("files", "1000");
+        opts.put("commits", "500");
+        opts.put("branches", "8");
+        opts.put("topology", "feature");
+        opts.put("merges", "0.1");
+        opts.put("size", "2048");
+        opts.put("ops", "500");
+        opts.put("seed", "1");
+        opts.put("mix", "status:40,log:20,global-log:5,find:5,"
+                + "checkout:10,commit:15,merge:5");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !opts.containsKey(arg.substring(0, eq))
+                    && !arg.startsWith("dir=")) {
+                System.err.println("Unknown option " + arg);
+                System.exit(1);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        long seed = Long.parseLong(opts.get("seed"));
+        Synthetic generator = new Synthetic(
+                Integer.parseInt(opts.get("files")),
+                Integer.parseInt(opts.get("commits")),
+                Integer.parseInt(opts.get("branches")),
+                Synthetic.Topology.valueOf(
+                        opts.get("topology").toUpperCase()),
+                Double.parseDouble(opts.get("merges")),
+                Integer.parseInt(opts.get("size")), seed);
+        boolean temporary = !opts.containsKey("dir");
+        File dir = temporary
+                ? Files.createTempDirectory("gitlet-load").toFile()
+                : new File(opts.get("dir"));
+        try {
+            long start = System.nanoTime();
+            Repository repo = generator.generate(dir);
+            System.out.printf("Generated %s in %.1f s%n", dir,
+                    (System.nanoTime() - start) / 1e9);
+            LoadTest test = new LoadTest(repo, generator,
+                    parseMix(opts.get("mix")), seed);
+            test.run(Integer.parseInt(opts.get("ops")));
+            test.report(System.out);
+        } finally {
+            if (temporary) {
+                deleteAll(dir);
+            }
+        }
+    }
+
+    /** A load test of REPO, made by GENERATOR, running commands in the
+     * proportions of MIX, with choices made from SEED. */
+    LoadTest(Repository repo, Synthetic generator, Map<String, Integer> mix,
+             long seed) {
+        this.repo = repo;
+        this.generator = generator;
+        this.mix = mix;
+        this.random = new Random(seed);
+        for (String command : mix.keySet()) {
+            latencies.put(command, new ArrayList<>());
+            failures.put(command, 0);
+        }
+    }
+
+    /** Return the weights of the commands in MIX, written as
+     * COMMAND:WEIGHT pairs separated by commas. */
+    static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.split(":");
+            if (kv.length != 2 || !COMMANDS.contains(kv[0])) {
+                throw new IllegalArgumentException("bad mix entry " + part);
+            }
+            result.put(kv[0], Integer.parseInt(kv[1]));
+        }
+        return result;
+    }
+
+    /** Run OPS commands drawn from the mix. */
+    void run(int ops) {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        for (int i = 0; i < ops; i += 1) {
+            int pick = random.nextInt(total);
+            for (Map.Entry<String, Integer> e : mix.entrySet()) {
+                pick -= e.getValue();
+                if (pick < 0) {
+                    execute(e.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Run COMMAND once and record how long it took, or that it
+     * failed. */
+    private void execute(String command) {
+        String other = otherBranch();
+        String head = command.equals("merge")
+                ? repo.log().get(0).sha1() : null;
+        if (command.equals("commit")) {
+            touch();
+        }
+        long start = System.nanoTime();
+        try {
+            switch (command) {
+            case "status":
+                repo.status();
+                break;
+            case "log":
+                repo.log();
+                break;
+            case "global-log":
+                repo.globalLog();
+                break;
+            case "find":
+                repo.find(Synthetic.message(random.nextInt(100)));
+                break;
+            case "checkout":
+                repo.checkoutBranch(other);
+                current = other;
+                break;
+            case "commit":
+                repo.add(file);
+                repo.commit("load " + latencies.get(command).size());
+                break;
+            case "merge":
+                repo.merge(other);
+                break;
+            default:
+                throw new IllegalArgumentException(command);
+            }
+        } catch (RuntimeException excp) {
+            failures.put(command, failures.get(command) + 1);
+        }
+        latencies.get(command).add(System.nanoTime() - start);
+        if (head != null) {
+            repo.reset(head);
+        }
+    }
+
+    /** Return a branch other than the current one, or the current one if
+     * there is no other. */
+    private String otherBranch() {
+        List<String> names = generator.branchNames();
+        if (names.size() == 1) {
+            return current;
+        }
+        String name;
+        do {
+            name = names.get(random.nextInt(names.size()));
+        } while (name.equals(current));
+        return name;
+    }
+
+    /** Give a file new contents of the median size, remembering it as
+     * FILE. */
+    private void touch() {
+        file = Synthetic.name(random.nextInt(generator.files()));
+        StringBuilder text = new StringBuilder();
+        while (text.length() < generator.medianSize()) {
+            text.append(Long.toHexString(random.nextLong())).append('\n');
+        }
+        try {
+            Files.write(new File(repo.root(), file).toPath(),
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Print the count, failures and latency percentiles in
+     * milliseconds of each command to OUT. */
+    void report(PrintStream out) {
+        out.printf("%-12s %7s %7s %9s %9s %9s %9s%n", "command", "count",
+                "failed", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, List<Long>> e : latencies.entrySet()) {
+            long[] times = new long[e.getValue().size()];
+            for (int i = 0; i < times.length; i += 1) {
+                times[i] = e.getValue().get(i);
+            }
+            Arrays.sort(times);
+            out.printf("%-12s %7d %7d %9.2f %9.2f %9.2f %9.2f%n",
+                    e.getKey(), times.length, failures.get(e.getKey()),
+                    percentile(times, 0.5), percentile(times, 0.9),
+                    percentile(times, 0.99), percentile(times, 1.0));
+        }
+    }
+
+    /** Return the Qth quantile, by nearest rank, of the sorted
+     * nanosecond TIMES, in milliseconds, or 0 if there are none. */
+    static double percentile(long[] times, double q) {
+        if (times.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(q * times.length);
+        return times[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it. */
+    private static void deleteAll(File file) throws IOException {
+        File[] entries = file.listFiles();
+        if (entries != null) {
+            for (File f : entries) {
+                deleteAll(f);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /** The repository under test. */
+    private final Repository repo;
+
+    /** The generator that made REPO. */
+    private final Synthetic generator;
+
+    /** The weight of each command in the workload. */
+    private final Map<String, Integer> mix;
+
+    /** Source of the commands and their operands. */
+    private final Random random;
+
+    /** The nanoseconds each run of each command took, by command. */
+    private final Map<String, List<Long>> latencies = new LinkedHashMap<>();
+
+    /** The number of runs of each command that failed, by command. */
+    private final Map<String, Integer> failures = new HashMap<>();
+
+    /** The current branch. */
+    private String current = "master";
+
+    /** The file last changed for a commit. */
+    private String file;
+}
@@ -0,0 +1,89 @@
+package gitlet.bench;
+
+import gitlet.Commit;
+import gitlet.Repository;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the commands that only read a repository: status,
+ * log and finding the common ancestor of two branches. The repository
+ * is generated once per trial and left unchanged.
+ * @author AMK Somani
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBench {
+
+    /** Number of files in the repository. */
+    @Param({"100", "1000"})
+    public int files;
+
+    /** Size of each file in bytes. */
+    @Param({"1024"})
+    public int fileSize;
+
+    /** Number of commits in the history of master. */
+    @Param({"10", "200"})
+    public int depth;
+
+    /** Share of the commits of master that are merges. */
+    @Param({"0.0", "0.25"})
+    public double mergeDensity;
+
+    /** Generate the repository. */
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        fixture = new Fixture(files, fileSize, depth, mergeDensity);
+        repo = fixture.repo();
+    }
+
+    /** Remove the repository. */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        fixture.delete();
+    }
+
+    /** The status command on a clean working directory. */
+    @Benchmark
+    public String status() {
+        return repo.status();
+    }
+
+    /** The log command, without printing. */
+    @Benchmark
+    public List<Commit> log() {
+        return repo.log();
+    }
+
+    /** The common ancestor of master and topic, as found by merge. */
+    @Benchmark
+    public String findCommonAncestor() {
+        return repo.mergeBase("master", "topic");
+    }
+
+    /** The generated repository. */
+    private Fixture fixture;
+
+    /** The repository of FIXTURE. */
+    private Repository repo;
+}
@@ -0,0 +1,97 @@
+package gitlet.bench;
+
+import gitlet.Repository;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the commands that rewrite the working directory:
+ * merging topic into master, and checking out the branch other and
+ * back. Before each merge master is reset to where it was, which is
+ * not timed.
+ * @author AMK Somani
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBench {
+
+    /** Number of files in the repository. */
+    @Param({"100", "1000"})
+    public int files;
+
+    /** Size of each file in bytes. */
+    @Param({"1024"})
+    public int fileSize;
+
+    /** Number of commits in the history of master. */
+    @Param({"10", "200"})
+    public int depth;
+
+    /** Share of the commits of master that are merges. */
+    @Param({"0.0", "0.25"})
+    public double mergeDensity;
+
+    /** Generate the repository. */
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        fixture = new Fixture(files, fileSize, depth, mergeDensity);
+        repo = fixture.repo();
+        master = repo.log().get(0).sha1();
+    }
+
+    /** Remove the repository. */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        fixture.delete();
+    }
+
+    /** Master put back before each call. */
+    @State(Scope.Thread)
+    public static class Unmerged {
+        /** Reset master of BENCH to its generated head. */
+        @Setup(Level.Invocation)
+        public void prepare(TreeBench bench) {
+            bench.repo.reset(bench.master);
+        }
+    }
+
+    /** Branch.merge of topic into master, given UNMERGED. */
+    @Benchmark
+    public void merge(Unmerged unmerged) {
+        repo.merge("topic");
+    }
+
+    /** A checkout of other followed by one of master. */
+    @Benchmark
+    public void checkout() {
+        repo.checkoutBranch("other");
+        repo.checkoutBranch("master");
+    }
+
+    /** The generated repository. */
+    private Fixture fixture;
+
+    /** The repository of FIXTURE. */
+    private Repository repo;
+
+    /** The generated head of master. */
+    private String master;
+}
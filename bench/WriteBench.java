@@ -0,0 +1,118 @@
+package gitlet.bench;
+
+import gitlet.Repository;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of staging a changed file and of committing. Before each
+ * call one file is given new contents, and for commit it is also
+ * staged, so every call has real work to do; that preparation is not
+ * timed.
+ * @author AMK Somani
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBench {
+
+    /** Number of files in the repository. */
+    @Param({"100", "1000"})
+    public int files;
+
+    /** Size of each file in bytes. */
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    /** Number of commits in the history of master. */
+    @Param({"10"})
+    public int depth;
+
+    /** Share of the commits of master that are merges. */
+    @Param({"0.0"})
+    public double mergeDensity;
+
+    /** Generate the repository. */
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        fixture = new Fixture(files, fileSize, depth, mergeDensity);
+        repo = fixture.repo();
+    }
+
+    /** Remove the repository. */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        fixture.delete();
+    }
+
+    /** Change the next file in turn, staging it if STAGED. */
+    void touch(boolean staged) {
+        next = (next + 1) % files;
+        fixture.write(next);
+        if (staged) {
+            repo.add(Fixture.name(next));
+        }
+    }
+
+    /** A file changed before each call. */
+    @State(Scope.Thread)
+    public static class Changed {
+        /** Change a file of BENCH. */
+        @Setup(Level.Invocation)
+        public void prepare(WriteBench bench) {
+            bench.touch(false);
+        }
+    }
+
+    /** A file changed and staged before each call. */
+    @State(Scope.Thread)
+    public static class Staged {
+        /** Change and stage a file of BENCH. */
+        @Setup(Level.Invocation)
+        public void prepare(WriteBench bench) {
+            bench.touch(true);
+        }
+    }
+
+    /** Stage.stage of one changed file, given CHANGED. */
+    @Benchmark
+    public void stage(Changed changed) {
+        repo.add(Fixture.name(next));
+    }
+
+    /** Commit.create of one staged file, given STAGED. */
+    @Benchmark
+    public String commit(Staged staged) {
+        commits += 1;
+        return repo.commit("bench " + commits);
+    }
+
+    /** The generated repository. */
+    private Fixture fixture;
+
+    /** The repository of FIXTURE. */
+    private Repository repo;
+
+    /** The file last changed. */
+    private int next;
+
+    /** Commits made so far, which keeps their messages apart. */
+    private int commits;
+}